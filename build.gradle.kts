@@ -1,11 +1,13 @@
 plugins {
     java
+    `java-test-fixtures`
     `maven-publish`
     signing
     id("com.diffplug.gradle.spotless") version "3.27.1"
     id("com.github.johnrengelman.shadow") version "5.2.0"
     id("de.marcphilipp.nexus-publish") version "0.4.0"
     id("io.codearte.nexus-staging") version "0.21.2"
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 repositories {
@@ -15,8 +17,9 @@ repositories {
 dependencies {
     implementation("com.amazonaws:aws-java-sdk-rds:1.11.745")
     implementation("com.amazonaws:aws-java-sdk-sts:1.11.745")
-    testImplementation("junit:junit:3.8.1")
+    testImplementation("junit:junit:4.13.2")
     testImplementation("org.postgresql:postgresql:42.2.12")
+    "jmhImplementation"(testFixtures(project))
 }
 
 group = "io.magj"
@@ -48,6 +51,12 @@ spotless {
     }
 }
 
+// The stub delegate driver shared by the tests is not published
+val javaComponent = components["java"] as AdhocComponentWithVariants
+listOf("testFixturesApiElements", "testFixturesRuntimeElements").forEach {
+    javaComponent.withVariantsFromConfiguration(configurations[it]) { skip() }
+}
+
 publishing {
     publications {
         create<MavenPublication>("mavenJava") {
@@ -130,6 +139,113 @@ tasks.shadowJar {
     }
 }
 
+jmh {
+    jmhVersion = "1.23"
+    // Throughput, plus sampled latency percentiles
+    benchmarkMode = listOf("thrpt", "sample")
+    timeUnit = "us"
+    // Allocation rate per operation
+    profilers = listOf("gc")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    resultFormat = "JSON"
+    duplicateClassesStrategy = DuplicatesStrategy.WARN
+    // Needs a fresh JVM per measurement, so is run by jmhStartup instead
+    exclude = listOf("StartupBenchmark")
+}
+
+val jmhStartup by tasks.registering(JavaExec::class) {
+    group = "jmh"
+    description = "Measures driver class loading and first connect time in fresh JVMs."
+    val jmhJar = tasks.named<Jar>("jmhJar")
+    dependsOn(jmhJar)
+    classpath(jmhJar.map { it.archiveFile })
+    main = "org.openjdk.jmh.Main"
+    val resultsFile = file("$buildDir/reports/jmh/startup-results.json")
+    args("StartupBenchmark", "-prof", "cl", "-rf", "json", "-rff", resultsFile)
+    doFirst {
+        resultsFile.parentFile.mkdirs()
+    }
+}
+
+val loadTestSourceSet = sourceSets.create("loadTest") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[loadTestSourceSet.implementationConfigurationName]
+    .extendsFrom(configurations.implementation.get())
+configurations[loadTestSourceSet.runtimeOnlyConfigurationName]
+    .extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "loadTestImplementation"(testFixtures(project))
+}
+
+val loadTest by tasks.registering(JavaExec::class) {
+    group = "verification"
+    description = "Runs concurrent connects against local stand-ins for AWS and the delegate driver."
+    classpath = loadTestSourceSet.runtimeClasspath
+    main = "io.magj.iamjdbcdriver.LoadTest"
+    val loadTestArgs: String? by project
+    args(loadTestArgs?.split(" ")?.filter { it.isNotBlank() } ?: emptyList())
+    // Credentials from the environment would stop the default chain reaching instance metadata
+    environment.keys.removeAll { it.startsWith("AWS_") }
+    val emptyAwsConfig = file("$buildDir/loadTest/empty-aws-config")
+    environment("AWS_CONFIG_FILE", emptyAwsConfig)
+    environment("AWS_CREDENTIAL_PROFILES_FILE", emptyAwsConfig)
+    doFirst {
+        emptyAwsConfig.parentFile.mkdirs()
+        emptyAwsConfig.writeText("")
+    }
+}
+
+val nativeTestSourceSet = sourceSets.create("nativeTest") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+configurations[nativeTestSourceSet.implementationConfigurationName]
+    .extendsFrom(configurations.implementation.get())
+configurations[nativeTestSourceSet.runtimeOnlyConfigurationName]
+    .extendsFrom(configurations.runtimeOnly.get())
+
+dependencies {
+    "nativeTestImplementation"(testFixtures(project))
+}
+
+val nativeTestExecutable = file("$buildDir/native/nativeTest/iam-jdbc-driver-smoke-test")
+
+val nativeTestImage by tasks.registering(Exec::class) {
+    group = "verification"
+    description = "Builds the native image smoke test, needs GraalVM with native-image installed."
+    val classpath = nativeTestSourceSet.runtimeClasspath
+    inputs.files(classpath)
+    outputs.file(nativeTestExecutable)
+    val graalHome = System.getenv("GRAALVM_HOME") ?: System.getenv("JAVA_HOME")
+    val nativeImage = graalHome?.let { file("$it/bin/native-image") }
+    executable = if (nativeImage != null && nativeImage.exists()) nativeImage.path else "native-image"
+    argumentProviders.add(CommandLineArgumentProvider {
+        listOf(
+            "--no-fallback",
+            "-cp", classpath.asPath,
+            "-o", nativeTestExecutable.path,
+            "io.magj.iamjdbcdriver.NativeImageSmokeTest"
+        )
+    })
+    doFirst {
+        nativeTestExecutable.parentFile.mkdirs()
+    }
+}
+
+val nativeTest by tasks.registering(Exec::class) {
+    group = "verification"
+    description = "Runs the native image smoke test, signing tokens and connecting to a stub delegate."
+    dependsOn(nativeTestImage)
+    executable = nativeTestExecutable.path
+}
+
 tasks.assemble {
     dependsOn(tasks.shadowJar)
 }
@@ -0,0 +1,91 @@
+plugins {
+    `java-library`
+    `maven-publish`
+    signing
+    id("com.diffplug.gradle.spotless")
+    id("de.marcphilipp.nexus-publish")
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    api(rootProject)
+    api("io.r2dbc:r2dbc-spi:1.0.0.RELEASE")
+    implementation("io.projectreactor:reactor-core:3.4.34")
+
+    testImplementation("junit:junit:4.13.2")
+}
+
+group = rootProject.group
+version = rootProject.version
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+    withJavadocJar()
+    withSourcesJar()
+}
+
+spotless {
+    java {
+        googleJavaFormat().aosp()
+        removeUnusedImports()
+    }
+
+    kotlinGradle {
+        ktlint()
+    }
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("mavenJava") {
+            from(components["java"])
+            pom {
+                name.set(project.name)
+                description.set("An R2DBC driver wrapper connecting using IAM RDS token authentication")
+                url.set("https://github.com/magJ/iam-jdbc-driver")
+                licenses {
+                    license {
+                        name.set("MIT License")
+                        url.set("https://opensource.org/licenses/MIT")
+                    }
+                }
+                developers {
+                    developer {
+                        id.set("magj")
+                        name.set("Magnus Jason")
+                        email.set("magnus@magnusjason.com")
+                    }
+                }
+                scm {
+                    url.set(pom.url)
+                }
+            }
+        }
+    }
+}
+
+nexusPublishing {
+    repositories {
+        sonatype()
+    }
+}
+
+signing {
+    val signingKeyId: String? by project
+    val signingKey: String? by project
+    val signingPassword: String? by project
+    if (signingKey != null && signingPassword != null) {
+        useInMemoryPgpKeys(signingKeyId, signingKey, signingPassword)
+        sign(publishing.publications["mavenJava"])
+    }
+}
+
+tasks.javadoc {
+    if (JavaVersion.current().isJava9Compatible) {
+        (options as StandardJavadocDocletOptions).addBooleanOption("html5", true)
+    }
+}
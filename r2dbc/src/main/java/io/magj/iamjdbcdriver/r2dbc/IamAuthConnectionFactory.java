@@ -0,0 +1,208 @@
+package io.magj.iamjdbcdriver.r2dbc;
+
+import io.magj.iamjdbcdriver.IamAuthJdbcDriverWrapper;
+import io.magj.iamjdbcdriver.MySqlIamAuthJdbcDriverWrapper;
+import io.magj.iamjdbcdriver.PostgreSqlIamAuthJdbcDriverWrapper;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Option;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * An R2DBC connection factory that connects through the {@code postgresql} or {@code mysql} R2DBC
+ * driver, with an RDS IAM auth token as the password.
+ *
+ * <p>Tokens are generated by {@link IamAuthJdbcDriverWrapper}, so the wrapper's properties, such as
+ * {@code awsRegion}, {@code awsProfile} and {@code awsStsCredentialProviderRoleArn}, are read from
+ * options of the same name, and tokens are cached and shared with JDBC connections in the same JVM.
+ * These options, which include secret keys, are not passed on to the delegate driver. Credential
+ * and STS requests are made on an executor, never on the subscribing thread, which may be an event
+ * loop.
+ */
+public final class IamAuthConnectionFactory implements ConnectionFactory {
+
+    /** The wrapper's properties that tokens depend on, read from options of the same name. */
+    private static final List<String> TOKEN_PROPERTIES =
+            Collections.unmodifiableList(
+                    Arrays.asList(
+                            IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_EXTERNAL_ID_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY,
+                            IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_REUSE_SECONDS_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_REFRESH_AHEAD_ENABLED_PROPERTY,
+                            IamAuthJdbcDriverWrapper
+                                    .IAM_AUTH_TOKEN_REFRESH_IDLE_TIMEOUT_SECONDS_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_FAILURE_BACKOFF_MILLIS_PROPERTY,
+                            IamAuthJdbcDriverWrapper.IAM_AUTH_FAILURE_MAX_BACKOFF_MILLIS_PROPERTY));
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final Map<String, String> tokenProperties;
+    private final Executor executor;
+    private final ConnectionFactoryOptions delegateOptions;
+    private final ConnectionFactoryMetadata metadata;
+    private volatile TokenConnectionFactory current;
+
+    /**
+     * Creates a factory that generates tokens on the executor that JDBC connects with a login
+     * timeout generate tokens on, which has a bounded number of threads.
+     *
+     * @param options the options to connect with, with {@link ConnectionFactoryOptions#DRIVER} set
+     *     to {@code iampostgresql} or {@code iammysql}
+     * @throws IllegalArgumentException if the driver is not supported
+     * @throws IllegalStateException if no host or user is given
+     */
+    public IamAuthConnectionFactory(ConnectionFactoryOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param executor the executor to generate tokens on, which must not be an event loop, or null
+     *     to use the default
+     * @see #IamAuthConnectionFactory(ConnectionFactoryOptions)
+     */
+    public IamAuthConnectionFactory(ConnectionFactoryOptions options, Executor executor) {
+        Object driver = options.getRequiredValue(ConnectionFactoryOptions.DRIVER);
+        Delegate delegate = Delegate.of(driver.toString());
+        if (delegate == null) {
+            throw new IllegalArgumentException("Unsupported driver: " + driver);
+        }
+        this.host = options.getRequiredValue(ConnectionFactoryOptions.HOST).toString();
+        this.port = port(options.getValue(ConnectionFactoryOptions.PORT), delegate.defaultPort);
+        this.user = options.getRequiredValue(ConnectionFactoryOptions.USER).toString();
+        this.tokenProperties = tokenProperties(options);
+        this.executor = executor;
+        this.delegateOptions =
+                ConnectionFactoryOptions.builder()
+                        .from(options, option -> !TOKEN_PROPERTIES.contains(option.name()))
+                        .option(ConnectionFactoryOptions.DRIVER, delegate.delegateDriver)
+                        .option(ConnectionFactoryOptions.PORT, port)
+                        .build();
+        this.metadata = ConnectionFactories.get(delegateOptions).getMetadata();
+    }
+
+    private static int port(Object port, int defaultPort) {
+        if (port == null) {
+            return defaultPort;
+        } else if (port instanceof Number) {
+            return ((Number) port).intValue();
+        }
+        try {
+            return Integer.parseInt(port.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid port: " + port, e);
+        }
+    }
+
+    private static Map<String, String> tokenProperties(ConnectionFactoryOptions options) {
+        Map<String, String> properties = new HashMap<>();
+        for (String name : TOKEN_PROPERTIES) {
+            Object value = options.getValue(Option.valueOf(name));
+            if (value != null) {
+                properties.put(name, value.toString());
+            }
+        }
+        return Collections.unmodifiableMap(properties);
+    }
+
+    /**
+     * The RDS IAM auth token to use as the password, generated, or taken from the cache, for each
+     * subscriber. This may be given to drivers that accept the password as a publisher.
+     */
+    public Publisher<CharSequence> password() {
+        return Mono.defer(
+                () ->
+                        Mono.<CharSequence>fromFuture(
+                                IamAuthJdbcDriverWrapper.generateRdsIamAuthTokenAsync(
+                                        host, port, user, tokenProperties, executor)));
+    }
+
+    @Override
+    public Publisher<? extends Connection> create() {
+        return Mono.from(password())
+                .flatMap(token -> Mono.<Connection>from(delegate(token.toString()).create()));
+    }
+
+    /**
+     * The delegate connection factory for the token. As tokens are reused for many connects, the
+     * factory for the last token is kept, rather than looking up the delegate driver every time.
+     */
+    private ConnectionFactory delegate(String token) {
+        TokenConnectionFactory current = this.current;
+        if (current != null && current.token.equals(token)) {
+            return current.factory;
+        }
+        ConnectionFactory factory =
+                ConnectionFactories.get(
+                        ConnectionFactoryOptions.builder()
+                                .from(delegateOptions)
+                                .option(ConnectionFactoryOptions.PASSWORD, token)
+                                .build());
+        this.current = new TokenConnectionFactory(token, factory);
+        return factory;
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return metadata;
+    }
+
+    /** The R2DBC drivers connected through, by the driver name they are wrapped with. */
+    enum Delegate {
+        POSTGRESQL(
+                PostgreSqlIamAuthJdbcDriverWrapper.SCHEME_NAME,
+                PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT),
+        MYSQL(
+                MySqlIamAuthJdbcDriverWrapper.SCHEME_NAME,
+                MySqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                MySqlIamAuthJdbcDriverWrapper.DEFAULT_PORT);
+
+        final String wrapperDriver;
+        final String delegateDriver;
+        final int defaultPort;
+
+        Delegate(String wrapperDriver, String delegateDriver, int defaultPort) {
+            this.wrapperDriver = wrapperDriver;
+            this.delegateDriver = delegateDriver;
+            this.defaultPort = defaultPort;
+        }
+
+        /** The delegate for the wrapper driver name, or null if it is not supported. */
+        static Delegate of(String wrapperDriver) {
+            for (Delegate delegate : values()) {
+                if (delegate.wrapperDriver.equals(wrapperDriver)) {
+                    return delegate;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class TokenConnectionFactory {
+        final String token;
+        final ConnectionFactory factory;
+
+        TokenConnectionFactory(String token, ConnectionFactory factory) {
+            this.token = token;
+            this.factory = factory;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package io.magj.iamjdbcdriver.r2dbc;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.ConnectionFactoryProvider;
+
+/**
+ * Provides {@link IamAuthConnectionFactory} for {@code r2dbc:iampostgresql://} and {@code
+ * r2dbc:iammysql://} URLs, connecting through the {@code postgresql} and {@code mysql} R2DBC
+ * drivers with an RDS IAM auth token as the password.
+ */
+public final class IamAuthConnectionFactoryProvider implements ConnectionFactoryProvider {
+
+    @Override
+    public ConnectionFactory create(ConnectionFactoryOptions connectionFactoryOptions) {
+        return new IamAuthConnectionFactory(connectionFactoryOptions);
+    }
+
+    @Override
+    public boolean supports(ConnectionFactoryOptions connectionFactoryOptions) {
+        Object driver = connectionFactoryOptions.getValue(ConnectionFactoryOptions.DRIVER);
+        return driver != null && IamAuthConnectionFactory.Delegate.of(driver.toString()) != null;
+    }
+
+    @Override
+    public String getDriver() {
+        return IamAuthConnectionFactory.Delegate.POSTGRESQL.wrapperDriver;
+    }
+}
@@ -0,0 +1,203 @@
+package io.magj.iamjdbcdriver.r2dbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import io.magj.iamjdbcdriver.IamAuthJdbcDriverWrapper;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Option;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+public class IamAuthConnectionFactoryTest {
+
+    private static final String HOST = "db1.abcdefghijkl.us-east-1.rds.amazonaws.com";
+    private static final String USER = "iam_user";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    @Before
+    public void resetProvider() {
+        StubConnectionFactoryProvider.reset();
+    }
+
+    @Test
+    public void isFoundByDriverName() {
+        assertTrue(
+                ConnectionFactories.get(options("iampostgresql").build())
+                        instanceof IamAuthConnectionFactory);
+    }
+
+    @Test
+    public void createsConnectionWithTokenAsPassword() {
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(options("iampostgresql").build());
+
+        ConnectionFactoryOptions delegateOptions = connectionOptions(factory);
+
+        assertEquals("postgresql", delegateOptions.getValue(ConnectionFactoryOptions.DRIVER));
+        assertEquals(HOST, delegateOptions.getValue(ConnectionFactoryOptions.HOST));
+        assertEquals(5432, delegateOptions.getValue(ConnectionFactoryOptions.PORT));
+        assertEquals(USER, delegateOptions.getValue(ConnectionFactoryOptions.USER));
+        assertEquals("app", delegateOptions.getValue(ConnectionFactoryOptions.DATABASE));
+        assertTrue(
+                isToken(
+                        delegateOptions.getValue(ConnectionFactoryOptions.PASSWORD).toString(),
+                        5432));
+        assertSame(StubConnectionFactoryProvider.METADATA, factory.getMetadata());
+    }
+
+    @Test
+    public void doesNotPassTokenOptionsToDelegate() {
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(options("iampostgresql").build());
+
+        ConnectionFactoryOptions delegateOptions = connectionOptions(factory);
+
+        for (String name :
+                new String[] {
+                    IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY,
+                    IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                    IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY,
+                    IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY
+                }) {
+            assertNull(name, delegateOptions.getValue(Option.valueOf(name)));
+        }
+        // Options of the delegate driver are passed on
+        assertEquals("disable", delegateOptions.getValue(Option.valueOf("sslMode")));
+    }
+
+    @Test
+    public void connectsToDefaultPortOfDelegate() {
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(options("iammysql").build());
+
+        ConnectionFactoryOptions delegateOptions = connectionOptions(factory);
+
+        assertEquals("mysql", delegateOptions.getValue(ConnectionFactoryOptions.DRIVER));
+        assertEquals(3306, delegateOptions.getValue(ConnectionFactoryOptions.PORT));
+        assertTrue(
+                isToken(
+                        delegateOptions.getValue(ConnectionFactoryOptions.PASSWORD).toString(),
+                        3306));
+    }
+
+    @Test
+    public void passwordIsToken() {
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(options("iampostgresql").build());
+
+        CharSequence password = Mono.from(factory.password()).block(TIMEOUT);
+
+        assertTrue(isToken(password.toString(), 5432));
+        // Only the connection factory for the metadata, as nothing was connected
+        assertEquals(1, StubConnectionFactoryProvider.created().size());
+    }
+
+    @Test
+    public void generatesTokenOnGivenExecutor() {
+        AtomicInteger executions = new AtomicInteger();
+        Executor executor =
+                command -> {
+                    executions.incrementAndGet();
+                    new Thread(command).start();
+                };
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(options("iampostgresql").build(), executor);
+
+        Mono.from(factory.password()).block(TIMEOUT);
+        Mono.from(factory.create()).block(TIMEOUT);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void reusesDelegateFactoryForSameToken() {
+        IamAuthConnectionFactory factory =
+                new IamAuthConnectionFactory(
+                        options("iampostgresql")
+                                .option(
+                                        Option.valueOf(
+                                                IamAuthJdbcDriverWrapper
+                                                        .IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY),
+                                        "true")
+                                .build());
+
+        Object first = connectionOptions(factory).getValue(ConnectionFactoryOptions.PASSWORD);
+        Object second = connectionOptions(factory).getValue(ConnectionFactoryOptions.PASSWORD);
+
+        assertEquals(first, second);
+        // One for the metadata, and one for the token
+        assertEquals(2, StubConnectionFactoryProvider.created().size());
+    }
+
+    @Test
+    public void rejectsUnsupportedDriver() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new IamAuthConnectionFactory(options("iamoracle").build()));
+    }
+
+    @Test
+    public void requiresHostAndUser() {
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        new IamAuthConnectionFactory(
+                                ConnectionFactoryOptions.builder()
+                                        .option(ConnectionFactoryOptions.DRIVER, "iampostgresql")
+                                        .option(ConnectionFactoryOptions.USER, USER)
+                                        .build()));
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        new IamAuthConnectionFactory(
+                                ConnectionFactoryOptions.builder()
+                                        .option(ConnectionFactoryOptions.DRIVER, "iampostgresql")
+                                        .option(ConnectionFactoryOptions.HOST, HOST)
+                                        .build()));
+    }
+
+    /** Connects, returning the options of the delegate connection factory connected with. */
+    private static ConnectionFactoryOptions connectionOptions(IamAuthConnectionFactory factory) {
+        Connection connection = Mono.from(factory.create()).block(TIMEOUT);
+        return ((StubConnectionFactoryProvider.Options) connection).options();
+    }
+
+    /** Options that sign tokens with static credentials, without caching them. */
+    private static ConnectionFactoryOptions.Builder options(String driver) {
+        return ConnectionFactoryOptions.builder()
+                .option(ConnectionFactoryOptions.DRIVER, driver)
+                .option(ConnectionFactoryOptions.HOST, HOST)
+                .option(ConnectionFactoryOptions.USER, USER)
+                .option(ConnectionFactoryOptions.DATABASE, "app")
+                .option(Option.valueOf("sslMode"), "disable")
+                .option(
+                        Option.valueOf(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY),
+                        "AKIDEXAMPLE")
+                .option(
+                        Option.valueOf(IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY),
+                        "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")
+                .option(
+                        Option.valueOf(IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY), "us-east-1")
+                .option(
+                        Option.valueOf(
+                                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY),
+                        "false");
+    }
+
+    /** Whether the password is an RDS IAM auth token for the host. */
+    private static boolean isToken(String password, int port) {
+        return password.startsWith(HOST + ":" + port + "/?")
+                && password.contains("DBUser=" + USER)
+                && password.contains("X-Amz-Signature=");
+    }
+}
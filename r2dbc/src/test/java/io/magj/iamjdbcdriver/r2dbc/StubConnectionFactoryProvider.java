@@ -0,0 +1,86 @@
+package io.magj.iamjdbcdriver.r2dbc;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.ConnectionFactoryProvider;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+
+/**
+ * Stands in for the {@code postgresql} and {@code mysql} R2DBC drivers, recording the options of
+ * every connection factory it creates. Registered as a service, so instances are created by {@link
+ * java.util.ServiceLoader}, and the recorded options are shared.
+ */
+public final class StubConnectionFactoryProvider implements ConnectionFactoryProvider {
+
+    static final ConnectionFactoryMetadata METADATA = () -> "Stub";
+
+    private static final List<ConnectionFactoryOptions> CREATED = new CopyOnWriteArrayList<>();
+
+    /** The options of every connection factory created, in order. */
+    static List<ConnectionFactoryOptions> created() {
+        return CREATED;
+    }
+
+    static void reset() {
+        CREATED.clear();
+    }
+
+    @Override
+    public ConnectionFactory create(ConnectionFactoryOptions options) {
+        CREATED.add(options);
+        return new StubConnectionFactory(options);
+    }
+
+    @Override
+    public boolean supports(ConnectionFactoryOptions options) {
+        Object driver = options.getValue(ConnectionFactoryOptions.DRIVER);
+        return "postgresql".equals(driver) || "mysql".equals(driver);
+    }
+
+    @Override
+    public String getDriver() {
+        return "stub";
+    }
+
+    /** Creates connections that know the options they were created with, and nothing else. */
+    static final class StubConnectionFactory implements ConnectionFactory {
+        private final ConnectionFactoryOptions options;
+
+        private StubConnectionFactory(ConnectionFactoryOptions options) {
+            this.options = options;
+        }
+
+        @Override
+        public Publisher<? extends Connection> create() {
+            return Mono.fromSupplier(
+                    () ->
+                            (Connection)
+                                    Proxy.newProxyInstance(
+                                            StubConnectionFactory.class.getClassLoader(),
+                                            new Class<?>[] {Connection.class, Options.class},
+                                            (proxy, method, args) -> {
+                                                if ("options".equals(method.getName())) {
+                                                    return options;
+                                                }
+                                                throw new UnsupportedOperationException(
+                                                        method.getName());
+                                            }));
+        }
+
+        @Override
+        public ConnectionFactoryMetadata getMetadata() {
+            return METADATA;
+        }
+    }
+
+    /** Implemented by stub connections, giving the options they were created with. */
+    interface Options {
+        ConnectionFactoryOptions options();
+    }
+}
@@ -1 +1,4 @@
 rootProject.name = "iam-jdbc-driver"
+
+include("r2dbc")
+project(":r2dbc").name = "iam-r2dbc-driver"
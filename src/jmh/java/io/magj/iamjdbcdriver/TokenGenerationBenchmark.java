@@ -0,0 +1,52 @@
+package io.magj.iamjdbcdriver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures RDS IAM auth token generation and complete connects through a stub delegate driver,
+ * with and without the token cache.
+ */
+@State(Scope.Benchmark)
+public class TokenGenerationBenchmark {
+
+    @Param({"true", "false"})
+    public boolean tokenCacheEnabled;
+
+    private IamAuthJdbcDriverWrapper wrapper;
+    private Properties connectionProperties;
+    private Map<String, String> properties;
+
+    @Setup
+    public void setUp() {
+        wrapper = ConnectPathBenchmark.newWrapper();
+        connectionProperties = ConnectPathBenchmark.staticCredentialProperties();
+        connectionProperties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY,
+                Boolean.toString(tokenCacheEnabled));
+        properties =
+                IamAuthJdbcDriverWrapper.mergeProperties(
+                        connectionProperties,
+                        IamAuthJdbcDriverWrapper.parseQueryString(null));
+    }
+
+    @Benchmark
+    public String generateRdsIamAuthToken() {
+        return wrapper.generateRdsIamAuthToken(
+                ConnectPathBenchmark.HOST,
+                PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                properties);
+    }
+
+    @Benchmark
+    public Connection connect() throws SQLException {
+        return wrapper.connect(ConnectPathBenchmark.URL, connectionProperties);
+    }
+}
@@ -0,0 +1,107 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.services.rds.auth.GetIamAuthTokenRequest;
+import com.amazonaws.services.rds.auth.RdsIamAuthTokenGenerator;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Properties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares uncached RDS IAM auth token generation using the AWS SDK's generator and the built in
+ * presigner.
+ *
+ * <p>Before measuring, checks that the built in presigner produces exactly the same tokens as the
+ * SDK, for both long lived and session credentials, signing at the time the SDK signed at.
+ */
+@State(Scope.Benchmark)
+public class TokenSignerBenchmark {
+
+    private static final DateTimeFormatter AMZ_DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    @Param({"sdk", "builtin"})
+    public String signer;
+
+    private IamAuthJdbcDriverWrapper wrapper;
+    private Map<String, String> properties;
+
+    @Setup
+    public void setUp() {
+        verifyMatchesSdk(new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCY"));
+        verifyMatchesSdk(
+                new BasicSessionCredentials(
+                        "ASIAEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCY", "FQoGZXIvYXdz+/="));
+
+        wrapper = ConnectPathBenchmark.newWrapper();
+        Properties connectionProperties = ConnectPathBenchmark.staticCredentialProperties();
+        connectionProperties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY, "false");
+        connectionProperties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY, signer);
+        properties =
+                IamAuthJdbcDriverWrapper.mergeProperties(
+                        connectionProperties,
+                        IamAuthJdbcDriverWrapper.parseQueryString(null));
+    }
+
+    @Benchmark
+    public String generateRdsIamAuthToken() {
+        return wrapper.generateRdsIamAuthToken(
+                ConnectPathBenchmark.HOST,
+                PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                properties);
+    }
+
+    private static void verifyMatchesSdk(AWSCredentials credentials) {
+        String user = "iam user+1";
+        String sdkToken =
+                RdsIamAuthTokenGenerator.builder()
+                        .credentials(new AWSStaticCredentialsProvider(credentials))
+                        .region("ap-southeast-2")
+                        .build()
+                        .getAuthToken(
+                                new GetIamAuthTokenRequest(
+                                        ConnectPathBenchmark.HOST,
+                                        PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                                        user));
+        long signedAtMillis =
+                LocalDateTime.parse(queryParameter(sdkToken, "X-Amz-Date"), AMZ_DATE_FORMAT)
+                        .toInstant(ZoneOffset.UTC)
+                        .toEpochMilli();
+        int expiresSeconds = Integer.parseInt(queryParameter(sdkToken, "X-Amz-Expires"));
+        String builtinToken =
+                new RdsIamAuthTokenPresigner()
+                        .presign(
+                                ConnectPathBenchmark.HOST,
+                                PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                                user,
+                                "ap-southeast-2",
+                                credentials,
+                                signedAtMillis,
+                                expiresSeconds);
+        if (!sdkToken.equals(builtinToken)) {
+            throw new IllegalStateException(
+                    "Built in presigner token differs from the SDK's:\n"
+                            + sdkToken
+                            + "\n"
+                            + builtinToken);
+        }
+    }
+
+    private static String queryParameter(String token, String name) {
+        int start = token.indexOf("&" + name + "=") + name.length() + 2;
+        int end = token.indexOf('&', start);
+        return token.substring(start, end == -1 ? token.length() : end);
+    }
+}
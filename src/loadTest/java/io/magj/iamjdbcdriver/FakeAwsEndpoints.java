@@ -0,0 +1,241 @@
+package io.magj.iamjdbcdriver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A local stand-in for the STS AssumeRole API and the EC2 instance metadata credentials endpoints,
+ * on a single embedded HTTP server.
+ *
+ * <p>Every request waits for the configured latency, and fails with a 500 at the configured rate,
+ * before it is served. Every set of credentials handed out is remembered, so that tokens can later
+ * be checked to have been signed with credentials that were actually issued.
+ */
+final class FakeAwsEndpoints implements AutoCloseable {
+
+    static final String INSTANCE_ROLE_NAME = "load-test-instance-role";
+    private static final String CREDENTIALS_PATH = "/latest/meta-data/iam/security-credentials/";
+    private static final String API_TOKEN_PATH = "/latest/api/token";
+
+    private final long latencyMillis;
+    private final double failureRate;
+    private final long credentialTtlSeconds;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, IssuedCredentials> issued = new ConcurrentHashMap<>();
+    private final LongAdder stsRequests = new LongAdder();
+    private final LongAdder instanceMetadataRequests = new LongAdder();
+    private final LongAdder injectedFailures = new LongAdder();
+
+    FakeAwsEndpoints(long latencyMillis, double failureRate, long credentialTtlSeconds)
+            throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.credentialTtlSeconds = credentialTtlSeconds;
+        this.server =
+                HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /** The base URL of the server, to use as both the STS and instance metadata endpoint. */
+    String getEndpoint() {
+        return "http://"
+                + server.getAddress().getAddress().getHostAddress()
+                + ":"
+                + server.getAddress().getPort();
+    }
+
+    /** The credentials issued with the access key, or null if none were. */
+    IssuedCredentials getIssued(String accessKeyId) {
+        return issued.get(accessKeyId);
+    }
+
+    long getStsRequests() {
+        return stsRequests.sum();
+    }
+
+    long getInstanceMetadataRequests() {
+        return instanceMetadataRequests.sum();
+    }
+
+    long getInjectedFailures() {
+        return injectedFailures.sum();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] request = readFully(body);
+            String path = exchange.getRequestURI().getPath();
+            boolean sts = "POST".equals(exchange.getRequestMethod()) && "/".equals(path);
+            if (sts) {
+                stsRequests.increment();
+            } else {
+                instanceMetadataRequests.increment();
+            }
+            sleep(latencyMillis);
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                injectedFailures.increment();
+                respond(exchange, 500, sts ? stsError() : "");
+                return;
+            }
+
+            if (sts) {
+                String form = new String(request, StandardCharsets.UTF_8);
+                if (!form.contains("Action=AssumeRole")) {
+                    respond(exchange, 400, stsError());
+                    return;
+                }
+                respond(exchange, 200, assumeRoleResponse(issue("sts")));
+            } else if ("PUT".equals(exchange.getRequestMethod()) && API_TOKEN_PATH.equals(path)) {
+                respond(exchange, 200, UUID.randomUUID().toString());
+            } else if (CREDENTIALS_PATH.equals(path)
+                    || CREDENTIALS_PATH.substring(0, CREDENTIALS_PATH.length() - 1).equals(path)) {
+                respond(exchange, 200, INSTANCE_ROLE_NAME);
+            } else if ((CREDENTIALS_PATH + INSTANCE_ROLE_NAME).equals(path)) {
+                respond(exchange, 200, instanceCredentialsResponse(issue("imds")));
+            } else {
+                respond(exchange, 404, "");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private IssuedCredentials issue(String source) {
+        String suffix = UUID.randomUUID().toString().replace("-", "").toUpperCase();
+        IssuedCredentials credentials =
+                new IssuedCredentials(
+                        source,
+                        "ASIA" + suffix.substring(0, 16),
+                        "secret/" + suffix,
+                        "session+" + suffix + "==",
+                        Instant.now()
+                                .plusSeconds(credentialTtlSeconds)
+                                .truncatedTo(ChronoUnit.SECONDS));
+        issued.put(credentials.accessKeyId, credentials);
+        return credentials;
+    }
+
+    private static String assumeRoleResponse(IssuedCredentials credentials) {
+        return "<AssumeRoleResponse xmlns=\"https://sts.amazonaws.com/doc/2011-06-15/\">"
+                + "<AssumeRoleResult><Credentials>"
+                + "<AccessKeyId>"
+                + credentials.accessKeyId
+                + "</AccessKeyId><SecretAccessKey>"
+                + credentials.secretAccessKey
+                + "</SecretAccessKey><SessionToken>"
+                + credentials.sessionToken
+                + "</SessionToken><Expiration>"
+                + credentials.expiration
+                + "</Expiration></Credentials>"
+                + "<AssumedRoleUser><AssumedRoleId>AROAEXAMPLE:load-test</AssumedRoleId>"
+                + "<Arn>arn:aws:sts::123456789012:assumed-role/load-test/load-test</Arn>"
+                + "</AssumedRoleUser></AssumeRoleResult>"
+                + "<ResponseMetadata><RequestId>"
+                + UUID.randomUUID()
+                + "</RequestId></ResponseMetadata></AssumeRoleResponse>";
+    }
+
+    private static String instanceCredentialsResponse(IssuedCredentials credentials) {
+        return "{\"Code\":\"Success\",\"LastUpdated\":\""
+                + Instant.now().truncatedTo(ChronoUnit.SECONDS)
+                + "\",\"Type\":\"AWS-HMAC\",\"AccessKeyId\":\""
+                + credentials.accessKeyId
+                + "\",\"SecretAccessKey\":\""
+                + credentials.secretAccessKey
+                + "\",\"Token\":\""
+                + credentials.sessionToken
+                + "\",\"Expiration\":\""
+                + credentials.expiration
+                + "\"}";
+    }
+
+    private static String stsError() {
+        return "<ErrorResponse xmlns=\"https://sts.amazonaws.com/doc/2011-06-15/\">"
+                + "<Error><Type>Receiver</Type><Code>ServiceUnavailable</Code>"
+                + "<Message>Injected failure</Message></Error>"
+                + "<RequestId>"
+                + UUID.randomUUID()
+                + "</RequestId></ErrorResponse>";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Credentials handed out by one of the endpoints. */
+    static final class IssuedCredentials {
+        final String source;
+        final String accessKeyId;
+        final String secretAccessKey;
+        final String sessionToken;
+        final Instant expiration;
+
+        private IssuedCredentials(
+                String source,
+                String accessKeyId,
+                String secretAccessKey,
+                String sessionToken,
+                Instant expiration) {
+            this.source = source;
+            this.accessKeyId = accessKeyId;
+            this.secretAccessKey = secretAccessKey;
+            this.sessionToken = sessionToken;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -0,0 +1,508 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives thousands of concurrent connects through the Postgres and MySQL wrappers, entirely
+ * offline, and checks that every connect received the token for its own host, port and user.
+ *
+ * <p>Credentials come from static keys, from STS by assuming a role, or from instance metadata,
+ * with STS and instance metadata served by {@link FakeAwsEndpoints}. The delegate is a {@link
+ * StubDriver}, so only the wrapper's own work is measured. Each scenario reports connects per
+ * second and latency percentiles, and the run fails if any connect received a token for another
+ * connect, or a token that was not signed correctly.
+ *
+ * <p>Options are given as {@code name=value} arguments, see {@link #DEFAULT_OPTIONS}. With {@code
+ * durationSeconds} set, each scenario runs for that long rather than for a number of connects, for
+ * soak testing, for example with a short {@code credentialTtlSeconds} so that credentials are
+ * rotated during the run.
+ */
+public final class LoadTest {
+
+    private static final String REGION = "us-east-1";
+    private static final String STATIC_ACCESS_KEY_ID = "AKIALOADTEST0000000";
+    private static final String STATIC_SECRET_ACCESS_KEY = "load/test+secret/access/key/0000000000";
+    private static final String METADATA_ENDPOINT_OVERRIDE_PROPERTY =
+            "com.amazonaws.sdk.ec2MetadataServiceEndpointOverride";
+    /** Unique tokens are remembered for signature checks after each scenario, up to this many. */
+    private static final int MAX_TOKENS_TO_VERIFY = 200_000;
+
+    private static final Map<String, String> DEFAULT_OPTIONS = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_OPTIONS.put("threads", "64");
+        DEFAULT_OPTIONS.put("connects", "20000");
+        DEFAULT_OPTIONS.put("durationSeconds", "0");
+        DEFAULT_OPTIONS.put("hosts", "4");
+        DEFAULT_OPTIONS.put("users", "8");
+        DEFAULT_OPTIONS.put("scenarios", "static,sts,imds");
+        DEFAULT_OPTIONS.put("tokenCache", "true,false");
+        DEFAULT_OPTIONS.put("signer", "sdk");
+        DEFAULT_OPTIONS.put("latencyMillis", "5");
+        DEFAULT_OPTIONS.put("failureRate", "0");
+        DEFAULT_OPTIONS.put("credentialTtlSeconds", "3600");
+    }
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = options(args);
+        double failureRate = Double.parseDouble(options.get("failureRate"));
+        warnAboutAmbientCredentials();
+
+        boolean passed = true;
+        try (FakeAwsEndpoints endpoints =
+                new FakeAwsEndpoints(
+                        Long.parseLong(options.get("latencyMillis")),
+                        failureRate,
+                        Long.parseLong(options.get("credentialTtlSeconds")))) {
+            System.setProperty(METADATA_ENDPOINT_OVERRIDE_PROPERTY, endpoints.getEndpoint());
+            IamAuthTokenGenerator.setStsClientFactory(
+                    credentials ->
+                            AWSSecurityTokenServiceClientBuilder.standard()
+                                    .withEndpointConfiguration(
+                                            new AwsClientBuilder.EndpointConfiguration(
+                                                    endpoints.getEndpoint(), REGION))
+                                    .withCredentials(credentials)
+                                    .build());
+            TokenChecker checker =
+                    new TokenChecker(
+                            endpoints, STATIC_ACCESS_KEY_ID, STATIC_SECRET_ACCESS_KEY, REGION);
+            System.out.println("Options: " + options);
+            for (String scenario : options.get("scenarios").split(",")) {
+                for (String tokenCache : options.get("tokenCache").split(",")) {
+                    Result result =
+                            new Scenario(
+                                            scenario.trim(),
+                                            Boolean.parseBoolean(tokenCache.trim()),
+                                            options,
+                                            endpoints,
+                                            checker)
+                                    .run();
+                    System.out.println(result);
+                    result.printProblems();
+                    passed &= result.passed(failureRate > 0);
+                }
+            }
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static Map<String, String> options(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULT_OPTIONS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0 || !options.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException(
+                        "Expected one of " + DEFAULT_OPTIONS.keySet() + " as name=value: " + arg);
+            }
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    /**
+     * The instance metadata scenario relies on the default credentials provider chain reaching
+     * instance metadata, which credentials from the environment would pre-empt.
+     */
+    private static void warnAboutAmbientCredentials() {
+        for (String name :
+                Arrays.asList(
+                        "AWS_ACCESS_KEY_ID",
+                        "AWS_PROFILE",
+                        "AWS_WEB_IDENTITY_TOKEN_FILE",
+                        "AWS_CONTAINER_CREDENTIALS_RELATIVE_URI")) {
+            if (System.getenv(name) != null) {
+                System.out.println(
+                        "WARNING: "
+                                + name
+                                + " is set, the imds scenario will not use instance metadata");
+            }
+        }
+    }
+
+    /** One endpoint and user to connect to, with the properties to connect with. */
+    private static final class Target {
+        private final String url;
+        private final String delegateUrl;
+        private final String host;
+        private final int port;
+        private final String user;
+        private final Properties properties;
+
+        private Target(
+                String scheme, String host, int port, String user, Properties properties) {
+            this.url = "jdbc:iam" + scheme + "://" + host + ":" + port + "/loadtest";
+            this.delegateUrl = "jdbc:" + scheme + "://" + host + ":" + port + "/loadtest";
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.properties = properties;
+        }
+    }
+
+    private static final class Scenario {
+        private final String name;
+        private final boolean tokenCache;
+        private final int threads;
+        private final int connects;
+        private final long durationNanos;
+        private final FakeAwsEndpoints endpoints;
+        private final TokenChecker checker;
+        private final Target[] targets;
+
+        private final AtomicInteger next = new AtomicInteger();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder withoutToken = new LongAdder();
+        private final LongAdder mismatched = new LongAdder();
+        private final AtomicReference<String> firstMismatch = new AtomicReference<>();
+        private final AtomicReference<SQLException> firstError = new AtomicReference<>();
+        private final Map<String, Target> tokensToVerify = new ConcurrentHashMap<>();
+
+        private Scenario(
+                String name,
+                boolean tokenCache,
+                Map<String, String> options,
+                FakeAwsEndpoints endpoints,
+                TokenChecker checker) {
+            this.name = name;
+            this.tokenCache = tokenCache;
+            this.threads = Integer.parseInt(options.get("threads"));
+            this.connects = Integer.parseInt(options.get("connects"));
+            this.durationNanos =
+                    TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("durationSeconds")));
+            this.endpoints = endpoints;
+            this.checker = checker;
+
+            Properties credentials = credentialProperties(name, endpoints);
+            int hosts = Integer.parseInt(options.get("hosts"));
+            int users = Integer.parseInt(options.get("users"));
+            List<Target> targets = new ArrayList<>();
+            for (int host = 0; host < hosts; host++) {
+                String hostname =
+                        "loadtest-"
+                                + host
+                                + ".cluster-abcdefghijkl."
+                                + REGION
+                                + ".rds.amazonaws.com";
+                for (int user = 0; user < users; user++) {
+                    for (String scheme : Arrays.asList("postgresql", "mysql")) {
+                        Properties properties = new Properties();
+                        properties.putAll(credentials);
+                        properties.setProperty(
+                                IamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_PROPERTY,
+                                StubDriver.class.getName());
+                        properties.setProperty(
+                                IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY,
+                                name + "_user_" + user);
+                        properties.setProperty(
+                                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY,
+                                Boolean.toString(tokenCache));
+                        properties.setProperty(
+                                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY,
+                                options.get("signer"));
+                        int port =
+                                scheme.equals("postgresql")
+                                        ? PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT
+                                        : MySqlIamAuthJdbcDriverWrapper.DEFAULT_PORT;
+                        targets.add(
+                                new Target(
+                                        scheme,
+                                        hostname,
+                                        port,
+                                        name + "_user_" + user,
+                                        properties));
+                    }
+                }
+            }
+            this.targets = targets.toArray(new Target[0]);
+        }
+
+        private static Properties credentialProperties(String name, FakeAwsEndpoints endpoints) {
+            Properties properties = new Properties();
+            switch (name) {
+                case "static":
+                    properties.setProperty(
+                            IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY,
+                            STATIC_ACCESS_KEY_ID);
+                    properties.setProperty(
+                            IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                            STATIC_SECRET_ACCESS_KEY);
+                    break;
+                case "sts":
+                    properties.setProperty(
+                            IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY,
+                            STATIC_ACCESS_KEY_ID);
+                    properties.setProperty(
+                            IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                            STATIC_SECRET_ACCESS_KEY);
+                    properties.setProperty(
+                            IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY,
+                            "arn:aws:iam::123456789012:role/load-test");
+                    break;
+                case "imds":
+                    // The default credentials provider chain, reaching instance metadata
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "Unknown scenario, expected static, sts or imds: " + name);
+            }
+            return properties;
+        }
+
+        private Result run() throws InterruptedException {
+            long stsRequests = endpoints.getStsRequests();
+            long instanceMetadataRequests = endpoints.getInstanceMetadataRequests();
+            long injectedFailures = endpoints.getInjectedFailures();
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Worker> workers = new ArrayList<>(threads);
+            List<Thread> workerThreads = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                Worker worker = new Worker(start);
+                workers.add(worker);
+                Thread thread = new Thread(worker, "load-test-" + name + "-" + i);
+                thread.start();
+                workerThreads.add(thread);
+            }
+            // Every thread starts at once, so the first connects all miss the token cache
+            long startNanos = System.nanoTime();
+            start.countDown();
+            for (Thread thread : workerThreads) {
+                thread.join();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            long[] latencies = sortedLatencies(workers);
+            long verified = verifySignatures();
+            return new Result(
+                    name + (tokenCache ? " (token cache)" : " (no token cache)"),
+                    latencies,
+                    elapsedNanos,
+                    errors.sum(),
+                    withoutToken.sum(),
+                    mismatched.sum(),
+                    verified,
+                    endpoints.getStsRequests() - stsRequests,
+                    endpoints.getInstanceMetadataRequests() - instanceMetadataRequests,
+                    endpoints.getInjectedFailures() - injectedFailures,
+                    firstMismatch.get(),
+                    firstError.get());
+        }
+
+        private boolean hasNext(long deadlineNanos, int index) {
+            if (durationNanos > 0) {
+                return System.nanoTime() - deadlineNanos < 0;
+            }
+            return index < connects;
+        }
+
+        private void connectOnce(Target target, Worker worker) {
+            Properties properties = new Properties();
+            properties.putAll(target.properties);
+            long start = System.nanoTime();
+            try (Connection connection = DriverManager.getConnection(target.url, properties)) {
+                worker.record(System.nanoTime() - start);
+                check(target, StubDriver.recorded(connection));
+            } catch (SQLException e) {
+                worker.record(System.nanoTime() - start);
+                errors.increment();
+                firstError.compareAndSet(null, e);
+            }
+        }
+
+        private void check(Target target, StubDriver.Connect connect) {
+            if (connect.password == null) {
+                // Token generation failed, which is only expected when injecting failures
+                withoutToken.increment();
+                return;
+            }
+            String problem;
+            if (!target.delegateUrl.equals(connect.url)) {
+                problem = "connected to " + connect.url + " instead of " + target.delegateUrl;
+            } else if (!target.user.equals(connect.user)) {
+                problem = "connected as " + connect.user + " instead of " + target.user;
+            } else {
+                problem =
+                        TokenChecker.checkAddressedTo(
+                                connect.password, target.host, target.port, target.user);
+            }
+            if (problem != null) {
+                mismatched.increment();
+                firstMismatch.compareAndSet(
+                        null, Thread.currentThread().getName() + ": " + problem);
+            } else if (tokensToVerify.size() < MAX_TOKENS_TO_VERIFY) {
+                // Equal tokens are for the same endpoint and user, so only need checking once
+                tokensToVerify.putIfAbsent(connect.password, target);
+            }
+        }
+
+        /** Every latency recorded by the workers, sorted. */
+        private static long[] sortedLatencies(List<Worker> workers) {
+            int total = 0;
+            for (Worker worker : workers) {
+                total += worker.count;
+            }
+            long[] merged = new long[total];
+            int offset = 0;
+            for (Worker worker : workers) {
+                System.arraycopy(worker.latencies, 0, merged, offset, worker.count);
+                offset += worker.count;
+            }
+            Arrays.sort(merged);
+            return merged;
+        }
+
+        /** Checks the signature of every unique token seen, after the measurement. */
+        private long verifySignatures() {
+            for (Map.Entry<String, Target> token : tokensToVerify.entrySet()) {
+                Target target = token.getValue();
+                String problem =
+                        checker.checkSignature(
+                                token.getKey(), target.host, target.port, target.user, name);
+                if (problem != null) {
+                    mismatched.increment();
+                    firstMismatch.compareAndSet(null, problem);
+                }
+            }
+            return tokensToVerify.size();
+        }
+
+        private final class Worker implements Runnable {
+            private final CountDownLatch start;
+            private long[] latencies = new long[1024];
+            private int count;
+
+            private Worker(CountDownLatch start) {
+                this.start = start;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                long deadlineNanos = System.nanoTime() + durationNanos;
+                int index;
+                while (hasNext(deadlineNanos, index = next.getAndIncrement())) {
+                    connectOnce(targets[Math.floorMod(index, targets.length)], this);
+                }
+            }
+
+            private void record(long nanos) {
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = nanos;
+            }
+        }
+    }
+
+    private static final class Result {
+        private final String name;
+        private final long[] sortedLatencies;
+        private final long elapsedNanos;
+        private final long errors;
+        private final long withoutToken;
+        private final long mismatched;
+        private final long verified;
+        private final long stsRequests;
+        private final long instanceMetadataRequests;
+        private final long injectedFailures;
+        private final String firstMismatch;
+        private final SQLException firstError;
+
+        private Result(
+                String name,
+                long[] sortedLatencies,
+                long elapsedNanos,
+                long errors,
+                long withoutToken,
+                long mismatched,
+                long verified,
+                long stsRequests,
+                long instanceMetadataRequests,
+                long injectedFailures,
+                String firstMismatch,
+                SQLException firstError) {
+            this.name = name;
+            this.sortedLatencies = sortedLatencies;
+            this.elapsedNanos = elapsedNanos;
+            this.errors = errors;
+            this.withoutToken = withoutToken;
+            this.mismatched = mismatched;
+            this.verified = verified;
+            this.stsRequests = stsRequests;
+            this.instanceMetadataRequests = instanceMetadataRequests;
+            this.injectedFailures = injectedFailures;
+            this.firstMismatch = firstMismatch;
+            this.firstError = firstError;
+        }
+
+        /**
+         * @param failuresInjected whether connects without a token, or failing, are expected
+         */
+        private boolean passed(boolean failuresInjected) {
+            return mismatched == 0 && (failuresInjected || (errors == 0 && withoutToken == 0));
+        }
+
+        private void printProblems() {
+            if (firstMismatch != null) {
+                System.out.println("  first mismatch: " + firstMismatch);
+            }
+            if (firstError != null) {
+                System.out.println("  first error: " + firstError);
+            }
+        }
+
+        private double percentileMicros(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(
+                    "%-24s connects=%d connects/s=%.0f p50=%.0fus p99=%.0fus max=%.0fus"
+                            + " errors=%d withoutToken=%d mismatched=%d tokensVerified=%d"
+                            + " stsRequests=%d imdsRequests=%d injectedFailures=%d",
+                    name,
+                    sortedLatencies.length,
+                    sortedLatencies.length / seconds,
+                    percentileMicros(50),
+                    percentileMicros(99),
+                    percentileMicros(100),
+                    errors,
+                    withoutToken,
+                    mismatched,
+                    verified,
+                    stsRequests,
+                    instanceMetadataRequests,
+                    injectedFailures);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.BasicSessionCredentials;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks that an RDS IAM auth token is the token for a particular connect: that it names the
+ * host, port and user connected with, and that signing it again, with the credentials it claims to
+ * be signed with, at the time and for the expiry it claims, gives exactly the same token.
+ *
+ * <p>Tokens are signed again with a fresh {@link RdsIamAuthTokenPresigner}, which {@code
+ * TokenSignerBenchmark} checks produces the same tokens as the AWS SDK. The SDK itself can't be
+ * used, as it reads the clock separately for the signing time and expiry, so occasionally signs
+ * tokens that expire in 899 seconds, which it can't reproduce.
+ */
+final class TokenChecker {
+
+    private static final DateTimeFormatter AMZ_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private final FakeAwsEndpoints endpoints;
+    private final String staticAccessKeyId;
+    private final String staticSecretAccessKey;
+    private final String region;
+    private final RdsIamAuthTokenPresigner presigner = new RdsIamAuthTokenPresigner();
+
+    TokenChecker(
+            FakeAwsEndpoints endpoints,
+            String staticAccessKeyId,
+            String staticSecretAccessKey,
+            String region) {
+        this.endpoints = endpoints;
+        this.staticAccessKeyId = staticAccessKeyId;
+        this.staticSecretAccessKey = staticSecretAccessKey;
+        this.region = region;
+    }
+
+    /**
+     * A cheap check, suitable for every connect, that the token at least names the host, port and
+     * user it was used for.
+     *
+     * @return null if the token names them, otherwise what is wrong with it
+     */
+    static String checkAddressedTo(String token, String host, int port, String user) {
+        String prefix = host + ":" + port + "/?";
+        if (!token.startsWith(prefix)) {
+            return "token for another endpoint: " + token;
+        }
+        if (!user.equals(parameters(token).get("DBUser"))) {
+            return "token for another user: " + token;
+        }
+        return null;
+    }
+
+    /**
+     * Signs the token again to check that it was signed correctly, with credentials issued by the
+     * expected source.
+     *
+     * @param source {@code static}, or the endpoint the credentials should have been issued by,
+     *     {@code sts} or {@code imds}
+     * @return null if the token is valid, otherwise what is wrong with it
+     */
+    String checkSignature(String token, String host, int port, String user, String source) {
+        Map<String, String> parameters = parameters(token);
+        String credential = parameters.get("X-Amz-Credential");
+        String date = parameters.get("X-Amz-Date");
+        String expires = parameters.get("X-Amz-Expires");
+        if (credential == null || date == null || expires == null || credential.indexOf('/') < 0) {
+            return "malformed token: " + token;
+        }
+        String accessKeyId = credential.substring(0, credential.indexOf('/'));
+        AWSCredentials credentials;
+        if ("static".equals(source)) {
+            if (!staticAccessKeyId.equals(accessKeyId)) {
+                return "token signed with unexpected access key " + accessKeyId;
+            }
+            credentials = new BasicAWSCredentials(staticAccessKeyId, staticSecretAccessKey);
+        } else {
+            FakeAwsEndpoints.IssuedCredentials issued = endpoints.getIssued(accessKeyId);
+            if (issued == null || !issued.source.equals(source)) {
+                return "token signed with access key " + accessKeyId + " not issued by " + source;
+            }
+            credentials =
+                    new BasicSessionCredentials(
+                            issued.accessKeyId, issued.secretAccessKey, issued.sessionToken);
+        }
+
+        long signedAtMillis =
+                LocalDateTime.parse(date, AMZ_DATE).toInstant(ZoneOffset.UTC).toEpochMilli();
+        String expected =
+                presigner.presign(
+                        host,
+                        port,
+                        user,
+                        region,
+                        credentials,
+                        signedAtMillis,
+                        Integer.parseInt(expires));
+        if (!expected.equals(token)) {
+            return "token is not signed correctly, expected: " + expected + " but was: " + token;
+        }
+        return null;
+    }
+
+    private static Map<String, String> parameters(String token) {
+        Map<String, String> parameters = new HashMap<>();
+        int query = token.indexOf('?');
+        if (query < 0) {
+            return parameters;
+        }
+        for (String pair : token.substring(query + 1).split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(pair.substring(0, equals), decode(pair.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares resolved {@link AWSCredentialsProvider} instances between connections with the same
+ * {@link CredentialProviderKey}.
+ *
+ * <p>Credential providers hold on to the credentials they resolve, refreshing them as required, so
+ * sharing them means that an assumed role session, for example, is created once and reused across
+ * connections rather than calling STS on every connect.
+ */
+final class AwsCredentialsProviderCache {
+
+    private static final Logger LOGGER =
+            Logger.getLogger(AwsCredentialsProviderCache.class.getName());
+
+    static final int DEFAULT_MAX_SIZE = 100;
+
+    private final Map<CredentialProviderKey, Entry> providers = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    AwsCredentialsProviderCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Applies the function to the provider for the key, creating the provider if there is none.
+     *
+     * <p>A provider evicted while a function is still using it is not closed until the last such
+     * function returns, so evicting never closes a provider, or the STS client behind it, in the
+     * middle of a credentials request.
+     */
+    <T> T apply(
+            CredentialProviderKey key,
+            Function<CredentialProviderKey, AWSCredentialsProvider> factory,
+            Function<AWSCredentialsProvider, T> function) {
+        Entry entry = acquire(key, factory);
+        try {
+            return function.apply(entry.provider);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private Entry acquire(
+            CredentialProviderKey key,
+            Function<CredentialProviderKey, AWSCredentialsProvider> factory) {
+        while (true) {
+            Entry entry = providers.get(key);
+            if (entry == null) {
+                entry = providers.computeIfAbsent(key, k -> new Entry(factory.apply(k)));
+                if (providers.size() > maxSize) {
+                    evictLeastRecentlyUsed(key);
+                }
+            }
+            if (entry.retain()) {
+                entry.lastUsedNanos = System.nanoTime();
+                return entry;
+            }
+            // Evicted and closed since it was looked up, look up its replacement
+            providers.remove(key, entry);
+        }
+    }
+
+    void invalidate(CredentialProviderKey key) {
+        Entry removed = providers.remove(key);
+        if (removed != null) {
+            // Drops the cache's own reference, closing the provider once it is no longer in use
+            removed.release();
+        }
+    }
+
+    void clear() {
+        providers.keySet().forEach(this::invalidate);
+    }
+
+    int size() {
+        return providers.size();
+    }
+
+    private void evictLeastRecentlyUsed(CredentialProviderKey keep) {
+        while (providers.size() > maxSize) {
+            CredentialProviderKey eldest = null;
+            long eldestLastUsed = 0;
+            for (Map.Entry<CredentialProviderKey, Entry> entry : providers.entrySet()) {
+                if (entry.getKey().equals(keep)) {
+                    continue;
+                }
+                if (eldest == null || entry.getValue().lastUsedNanos - eldestLastUsed < 0) {
+                    eldestLastUsed = entry.getValue().lastUsedNanos;
+                    eldest = entry.getKey();
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            invalidate(eldest);
+        }
+    }
+
+    private static void close(AWSCredentialsProvider provider) {
+        if (provider instanceof Closeable) {
+            try {
+                ((Closeable) provider).close();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Error closing evicted credentials provider", e);
+            }
+        }
+    }
+
+    /**
+     * A cached provider, with a count of its references: one held by the cache until the entry is
+     * removed, plus one for each caller currently using the provider. The provider is closed when
+     * the count reaches zero, after which the entry can't be retained again.
+     */
+    private static final class Entry {
+        private final AWSCredentialsProvider provider;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private Entry(AWSCredentialsProvider provider) {
+            this.provider = provider;
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                close(provider);
+            }
+        }
+    }
+}
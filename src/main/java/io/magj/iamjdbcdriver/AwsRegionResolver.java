@@ -0,0 +1,160 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.profile.path.AwsProfileFileLocationProvider;
+import com.amazonaws.regions.AwsProfileRegionProvider;
+import com.amazonaws.regions.AwsRegionProvider;
+import java.io.File;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves the AWS region to sign RDS IAM auth tokens for, without repeating file or network I/O
+ * on every connect.
+ *
+ * <p>Regions are resolved in the following order:
+ *
+ * <ol>
+ *   <li>The region embedded in an RDS instance, Aurora cluster or RDS Proxy hostname, for example
+ *       {@code mydb.cluster-abcdefghijkl.us-east-1.rds.amazonaws.com}
+ *   <li>The region of the configured AWS profile
+ *   <li>The default region provider chain
+ * </ol>
+ *
+ * <p>Profile and provider chain results are cached for the lifetime of the JVM, and discarded
+ * whenever the AWS config file is modified. A failure of the provider chain, for example when no
+ * region is configured and instance metadata is unreachable, is remembered for as long as the
+ * config file goes unchecked, so that connects in the meantime fail without repeating the lookup.
+ */
+final class AwsRegionResolver {
+
+    /**
+     * Matches the region segment of RDS hostnames across the standard, China and GovCloud
+     * partitions. Instance, cluster, cluster-ro, cluster-custom and proxy endpoints all place the
+     * region immediately before the {@code rds} service segment.
+     */
+    private static final Pattern RDS_HOST_PATTERN =
+            Pattern.compile(
+                    "^(?:.+\\.)?([a-z]{2}(?:-gov|-iso[a-z]?)?-[a-z]+-\\d+)"
+                            + "\\.rds\\.amazonaws\\.com(?:\\.cn)?\\.?$",
+                    Pattern.CASE_INSENSITIVE);
+
+    static final long CONFIG_FILE_CHECK_INTERVAL_MILLIS = 5000;
+
+    private final AwsRegionProvider defaultRegionProvider;
+    private final Runnable onDefaultRegionLookup;
+    private final LongSupplier currentTimeMillis;
+    private final Map<String, Optional<String>> profileRegions = new ConcurrentHashMap<>();
+    private volatile String defaultRegion;
+    private volatile DefaultRegionFailure defaultRegionFailure;
+    private volatile long configFileLastModified;
+    private volatile long configFileCheckedAtMillis;
+
+    /** @param onDefaultRegionLookup called whenever the default region provider is consulted */
+    AwsRegionResolver(AwsRegionProvider defaultRegionProvider, Runnable onDefaultRegionLookup) {
+        this(defaultRegionProvider, onDefaultRegionLookup, System::currentTimeMillis);
+    }
+
+    /** @param currentTimeMillis the clock that cached results are expired by */
+    AwsRegionResolver(
+            AwsRegionProvider defaultRegionProvider,
+            Runnable onDefaultRegionLookup,
+            LongSupplier currentTimeMillis) {
+        this.defaultRegionProvider = defaultRegionProvider;
+        this.onDefaultRegionLookup = onDefaultRegionLookup;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    String resolve(String host, String awsProfile) {
+        String hostRegion = regionFromHost(host);
+        if (hostRegion != null) {
+            return hostRegion;
+        }
+        invalidateIfConfigFileChanged();
+        if (awsProfile != null) {
+            Optional<String> profileRegion =
+                    profileRegions.computeIfAbsent(
+                            awsProfile,
+                            profile ->
+                                    Optional.ofNullable(
+                                            new AwsProfileRegionProvider(profile).getRegion()));
+            if (profileRegion.isPresent()) {
+                return profileRegion.get();
+            }
+        }
+        String region = defaultRegion;
+        if (region == null) {
+            region = lookUpDefaultRegion();
+        }
+        return region;
+    }
+
+    /**
+     * @throws SdkClientException if the default region provider chain fails, or failed within the
+     *     last {@link #CONFIG_FILE_CHECK_INTERVAL_MILLIS}, a new one for every call, wrapping that
+     *     failure
+     */
+    private String lookUpDefaultRegion() {
+        long now = currentTimeMillis.getAsLong();
+        DefaultRegionFailure failure = defaultRegionFailure;
+        if (failure != null && now - failure.failedAtMillis < CONFIG_FILE_CHECK_INTERVAL_MILLIS) {
+            throw new SdkClientException(
+                    "Unable to resolve the default AWS region, which failed within the last "
+                            + CONFIG_FILE_CHECK_INTERVAL_MILLIS
+                            + "ms: "
+                            + failure.cause.getMessage(),
+                    failure.cause);
+        }
+        onDefaultRegionLookup.run();
+        String region;
+        try {
+            region = defaultRegionProvider.getRegion();
+        } catch (RuntimeException e) {
+            defaultRegionFailure = new DefaultRegionFailure(e, now);
+            throw e;
+        }
+        defaultRegionFailure = null;
+        defaultRegion = region;
+        return region;
+    }
+
+    static String regionFromHost(String host) {
+        if (host == null) {
+            return null;
+        }
+        Matcher matcher = RDS_HOST_PATTERN.matcher(host);
+        return matcher.matches() ? matcher.group(1).toLowerCase(Locale.ROOT) : null;
+    }
+
+    private void invalidateIfConfigFileChanged() {
+        long now = currentTimeMillis.getAsLong();
+        if (now - configFileCheckedAtMillis < CONFIG_FILE_CHECK_INTERVAL_MILLIS) {
+            return;
+        }
+        configFileCheckedAtMillis = now;
+        File configFile =
+                AwsProfileFileLocationProvider.DEFAULT_CONFIG_LOCATION_PROVIDER.getLocation();
+        long lastModified = configFile == null ? 0 : configFile.lastModified();
+        if (lastModified != configFileLastModified) {
+            configFileLastModified = lastModified;
+            profileRegions.clear();
+            defaultRegion = null;
+            defaultRegionFailure = null;
+        }
+    }
+
+    private static final class DefaultRegionFailure {
+        private final RuntimeException cause;
+        private final long failedAtMillis;
+
+        private DefaultRegionFailure(RuntimeException cause, long failedAtMillis) {
+            this.cause = cause;
+            this.failedAtMillis = failedAtMillis;
+        }
+    }
+}
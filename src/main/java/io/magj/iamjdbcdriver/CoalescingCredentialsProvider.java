@@ -0,0 +1,114 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSSessionCredentials;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Shares a single in flight {@link #getCredentials()} call between all threads requesting
+ * credentials for the same key, so that a burst of connects results in one call to instance
+ * metadata or STS rather than one per thread.
+ */
+final class CoalescingCredentialsProvider implements AWSCredentialsProvider, Closeable {
+
+    /**
+     * How long after refreshing credentials, because a token signed with them was rejected, they
+     * may not be refreshed again. A database that rejects every token, for example because the
+     * user was not granted IAM authentication, then can't cause a credentials fetch per connect.
+     */
+    static final long MIN_REJECTED_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final CredentialProviderKey key;
+    private final AWSCredentialsProvider delegate;
+    private final SingleFlight<CredentialProviderKey, AWSCredentials> requests;
+    private final Runnable onFetched;
+    private final Supplier<AWSCredentials> fetch;
+    private final AtomicReference<AWSCredentials> lastCredentials = new AtomicReference<>();
+    private volatile long lastRefreshedNanos =
+            System.nanoTime() - MIN_REJECTED_REFRESH_INTERVAL_NANOS;
+
+    /**
+     * @param onFetched called whenever the delegate returns credentials with a different access key
+     *     or session token to those it previously returned, indicating that it fetched new
+     *     credentials rather than returning cached ones
+     */
+    CoalescingCredentialsProvider(
+            CredentialProviderKey key,
+            AWSCredentialsProvider delegate,
+            SingleFlight<CredentialProviderKey, AWSCredentials> requests,
+            Runnable onFetched) {
+        this.key = key;
+        this.delegate = delegate;
+        this.requests = requests;
+        this.onFetched = onFetched;
+        this.fetch = delegate::getCredentials;
+    }
+
+    @Override
+    public AWSCredentials getCredentials() {
+        AWSCredentials credentials = requests.execute(key, fetch);
+        if (onFetched != null
+                && !sameCredentials(lastCredentials.get(), credentials)
+                && !sameCredentials(lastCredentials.getAndSet(credentials), credentials)) {
+            onFetched.run();
+        }
+        return credentials;
+    }
+
+    /**
+     * Refreshes the delegate after a token signed with the access key was rejected, unless the
+     * credentials have since been replaced, or were refreshed too recently, so that any number of
+     * connects rejected with the same credentials cause at most one refresh.
+     */
+    synchronized void refreshRejected(String accessKeyId) {
+        AWSCredentials current = lastCredentials.get();
+        if (current != null
+                && accessKeyId != null
+                && !accessKeyId.equals(current.getAWSAccessKeyId())) {
+            return;
+        }
+        if (System.nanoTime() - lastRefreshedNanos < MIN_REJECTED_REFRESH_INTERVAL_NANOS) {
+            return;
+        }
+        try {
+            delegate.refresh();
+        } finally {
+            lastRefreshedNanos = System.nanoTime();
+        }
+    }
+
+    private static boolean sameCredentials(AWSCredentials previous, AWSCredentials current) {
+        if (previous == current) {
+            return true;
+        }
+        if (previous == null || current == null) {
+            return false;
+        }
+        return Objects.equals(previous.getAWSAccessKeyId(), current.getAWSAccessKeyId())
+                && Objects.equals(sessionToken(previous), sessionToken(current));
+    }
+
+    private static String sessionToken(AWSCredentials credentials) {
+        return credentials instanceof AWSSessionCredentials
+                ? ((AWSSessionCredentials) credentials).getSessionToken()
+                : null;
+    }
+
+    @Override
+    public void refresh() {
+        delegate.refresh();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+}
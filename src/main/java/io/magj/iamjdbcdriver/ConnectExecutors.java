@@ -0,0 +1,125 @@
+package io.magj.iamjdbcdriver;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Provides the executor used for asynchronous connects when the caller does not supply one, the
+ * executor tokens are generated on when connects must not wait beyond a login timeout, and the
+ * scheduler that checks for tokens to refresh.
+ */
+final class ConnectExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectExecutors.class.getName());
+    private static final int TOKEN_THREADS = 16;
+    private static final int TOKEN_QUEUE_CAPACITY = 1024;
+    private static final long TOKEN_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private ConnectExecutors() {}
+
+    /**
+     * A shared executor that runs each task on a virtual thread where the JVM supports them, or on
+     * a cached pool of daemon threads otherwise. Created on first use.
+     */
+    static ExecutorService defaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * A shared executor with a bounded number of daemon threads and a bounded queue, rejecting
+     * tasks beyond them, so that credential and STS requests that hang can't build up threads
+     * without limit while the connects waiting on them give up at their login timeout. Created on
+     * first use.
+     */
+    static ExecutorService tokenExecutor() {
+        return TokenExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * A shared scheduler with a single daemon thread, that every token refresher checks for tokens
+     * to refresh on. Tasks run on it must be short, handing any token generation to another
+     * executor. Created on first use.
+     */
+    static ScheduledExecutorService refreshScheduler() {
+        return RefreshSchedulerHolder.SCHEDULER;
+    }
+
+    private static ExecutorService createDefaultExecutor() {
+        try {
+            // Looked up dynamically, as the library targets Java 8
+            MethodHandle newVirtualThreadPerTaskExecutor =
+                    MethodHandles.publicLookup()
+                            .findStatic(
+                                    Executors.class,
+                                    "newVirtualThreadPerTaskExecutor",
+                                    MethodType.methodType(ExecutorService.class));
+            ExecutorService executor = (ExecutorService) newVirtualThreadPerTaskExecutor.invoke();
+            LOGGER.fine("Using virtual threads for asynchronous connects");
+            return executor;
+        } catch (Throwable e) {
+            LOGGER.fine(
+                    "Virtual threads unavailable, using platform threads for asynchronous connects");
+            return Executors.newCachedThreadPool(daemonThreadFactory("iam-jdbc-driver-connect-"));
+        }
+    }
+
+    private static ExecutorService createTokenExecutor() {
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(
+                        TOKEN_THREADS,
+                        TOKEN_THREADS,
+                        TOKEN_THREAD_KEEP_ALIVE_SECONDS,
+                        TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<>(TOKEN_QUEUE_CAPACITY),
+                        daemonThreadFactory("iam-jdbc-driver-token-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ScheduledExecutorService createRefreshScheduler() {
+        ScheduledThreadPoolExecutor scheduler =
+                new ScheduledThreadPoolExecutor(
+                        1,
+                        runnable -> {
+                            Thread thread =
+                                    new Thread(runnable, "iam-jdbc-driver-token-refresher");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        // Refreshers of deregistered wrappers are dropped, rather than kept until their next check
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class DefaultExecutorHolder {
+        private static final ExecutorService EXECUTOR = createDefaultExecutor();
+    }
+
+    private static final class TokenExecutorHolder {
+        private static final ExecutorService EXECUTOR = createTokenExecutor();
+    }
+
+    private static final class RefreshSchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = createRefreshScheduler();
+    }
+}
@@ -0,0 +1,121 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limits the rate of new connections per database endpoint, as RDS limits the rate of new IAM
+ * authenticated connections per instance, rejecting connections beyond it.
+ *
+ * <p>Each endpoint is a token bucket, held as a single {@link AtomicLong}: the time at which the
+ * bucket will be full again, once every permit reserved so far has been paid back at the limited
+ * rate. Callers reserve a permit with a compare and set, so no lock is taken, and permits are
+ * handed out in the order they were reserved, so waiting callers are served first come, first
+ * served. A caller that would have to wait longer than it is prepared to reserves nothing,
+ * leaving the permit for those behind it.
+ *
+ * <p>A bucket is only forgotten by a compare and set from the time it was full to {@link
+ * #FORGOTTEN}, so that either a reservation made at the same time keeps the bucket, or the
+ * reservation fails and is made again on the bucket that replaces it.
+ */
+final class ConnectRateLimiter {
+
+    /** Beyond this many endpoints, endpoints whose buckets are full are forgotten. */
+    static final int MAX_ENDPOINTS = 1000;
+    /** Held by a bucket once it has been forgotten, so that no permit is reserved from it. */
+    private static final long FORGOTTEN = Long.MIN_VALUE;
+
+    private final IamAuthMetrics metrics;
+    private final Map<String, AtomicLong> fullAtNanos = new ConcurrentHashMap<>();
+
+    ConnectRateLimiter(IamAuthMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Waits for a permit to connect to the endpoint.
+     *
+     * @param permitsPerSecond the sustained rate of connects to allow to the endpoint
+     * @param burst how many connects may be made at once after the endpoint has been idle
+     * @param maxWaitNanos the longest to wait for a permit
+     * @return false, without waiting, if no permit could be had within {@code maxWaitNanos}
+     * @throws InterruptedException if interrupted while waiting, the permit is then lost
+     */
+    boolean acquire(String endpoint, long permitsPerSecond, long burst, long maxWaitNanos)
+            throws InterruptedException {
+        long intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        long burstNanos = intervalNanos * Math.max(1, burst);
+        AtomicLong bucket = bucket(endpoint);
+        long now = System.nanoTime();
+        long waitNanos;
+        while (true) {
+            long fullAt = bucket.get();
+            if (fullAt == FORGOTTEN) {
+                // Forgotten since it was looked up, its replacement is just as full
+                bucket = bucket(endpoint);
+                continue;
+            }
+            long reserved = (fullAt - now > 0 ? fullAt : now) + intervalNanos;
+            waitNanos = reserved - burstNanos - now;
+            if (waitNanos > maxWaitNanos) {
+                metrics.connectRateLimitRejected();
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, reserved)) {
+                break;
+            }
+            now = System.nanoTime();
+        }
+
+        long permittedAt = now + Math.max(0, waitNanos);
+        for (long remaining = waitNanos; remaining > 0; ) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = permittedAt - System.nanoTime();
+        }
+        metrics.connectRateLimitWaited(System.nanoTime() - now);
+        return true;
+    }
+
+    int size() {
+        return fullAtNanos.size();
+    }
+
+    private AtomicLong bucket(String endpoint) {
+        while (true) {
+            AtomicLong bucket = fullAtNanos.get(endpoint);
+            if (bucket == null) {
+                if (fullAtNanos.size() >= MAX_ENDPOINTS) {
+                    forgetFullBuckets();
+                }
+                bucket =
+                        fullAtNanos.computeIfAbsent(
+                                endpoint, e -> new AtomicLong(System.nanoTime()));
+            }
+            if (bucket.get() != FORGOTTEN) {
+                return bucket;
+            }
+            // Forgotten, but not yet removed
+            fullAtNanos.remove(endpoint, bucket);
+        }
+    }
+
+    /** Removes the endpoints whose buckets are full, which behave the same as new endpoints. */
+    private void forgetFullBuckets() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, AtomicLong> entry : fullAtNanos.entrySet()) {
+            AtomicLong bucket = entry.getValue();
+            long fullAt = bucket.get();
+            if (fullAt != FORGOTTEN
+                    && now - fullAt > 0
+                    && bucket.compareAndSet(fullAt, FORGOTTEN)) {
+                fullAtNanos.remove(entry.getKey(), bucket);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Identifies the credentials an RDS IAM auth token would be signed with, based purely on the
+ * configured connection properties.
+ *
+ * <p>Two connections with equal keys resolve to the same credential source, so anything derived
+ * from those credentials may be shared between them.
+ */
+final class CredentialProviderKey {
+
+    private final String accessKeyId;
+    private final String secretAccessKey;
+    private final String profile;
+    private final String roleArn;
+    private final String externalId;
+    private final String sessionName;
+    private final int hashCode;
+
+    CredentialProviderKey(
+            String accessKeyId,
+            String secretAccessKey,
+            String profile,
+            String roleArn,
+            String externalId,
+            String sessionName) {
+        this.accessKeyId = accessKeyId;
+        this.secretAccessKey = secretAccessKey;
+        this.profile = profile;
+        this.roleArn = roleArn;
+        this.externalId = externalId;
+        this.sessionName = sessionName;
+        this.hashCode =
+                Objects.hash(
+                        accessKeyId, secretAccessKey, profile, roleArn, externalId, sessionName);
+    }
+
+    static CredentialProviderKey from(Map<String, String> properties) {
+        String accessKeyId = properties.get(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY);
+        String secretAccessKey =
+                properties.get(IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY);
+        if (accessKeyId == null || secretAccessKey == null) {
+            // Static keys are ignored unless both are present
+            accessKeyId = null;
+            secretAccessKey = null;
+        }
+        return new CredentialProviderKey(
+                accessKeyId,
+                secretAccessKey,
+                properties.get(IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY),
+                properties.get(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY),
+                properties.get(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_EXTERNAL_ID_PROPERTY),
+                properties.get(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY));
+    }
+
+    String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    String getSecretAccessKey() {
+        return secretAccessKey;
+    }
+
+    String getProfile() {
+        return profile;
+    }
+
+    String getRoleArn() {
+        return roleArn;
+    }
+
+    String getExternalId() {
+        return externalId;
+    }
+
+    String getSessionName() {
+        return sessionName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CredentialProviderKey that = (CredentialProviderKey) o;
+        return Objects.equals(accessKeyId, that.accessKeyId)
+                && Objects.equals(secretAccessKey, that.secretAccessKey)
+                && Objects.equals(profile, that.profile)
+                && Objects.equals(roleArn, that.roleArn)
+                && Objects.equals(externalId, that.externalId)
+                && Objects.equals(sessionName, that.sessionName);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /** Never includes the secret access key. */
+    @Override
+    public String toString() {
+        return "CredentialProviderKey{"
+                + "accessKeyId="
+                + accessKeyId
+                + ", profile="
+                + profile
+                + ", roleArn="
+                + roleArn
+                + ", externalId="
+                + externalId
+                + ", sessionName="
+                + sessionName
+                + '}';
+    }
+}
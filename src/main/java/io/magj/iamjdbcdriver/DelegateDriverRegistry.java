@@ -0,0 +1,111 @@
+package io.magj.iamjdbcdriver;
+
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the delegate JDBC drivers used by every wrapper instance, keyed by driver class name.
+ *
+ * <p>Each delegate driver class is loaded and instantiated at most once, after which resolving it
+ * is a lock-free map lookup. Delegates may also be found by their JDBC URL scheme, so that a
+ * wrapper only configured with {@link
+ * IamAuthJdbcDriverWrapper#DELEGATE_DRIVER_SCHEME_NAME_PROPERTY} can resolve the well known
+ * drivers.
+ *
+ * <p>A delegate that was registered explicitly, or is already registered with {@link
+ * DriverManager}, as drivers on the classpath are, is used as is, without reflection. Only
+ * otherwise is the driver class loaded and instantiated reflectively, which in a GraalVM native
+ * image requires the class to be registered for reflection.
+ */
+final class DelegateDriverRegistry {
+
+    /** Set by GraalVM while building, and in, a native image. */
+    private static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+    private final Map<String, Driver> driversByClassName = new ConcurrentHashMap<>();
+    private final Map<String, String> classNamesByScheme = new ConcurrentHashMap<>();
+
+    DelegateDriverRegistry() {
+        classNamesByScheme.put(
+                PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_NAME);
+        classNamesByScheme.put(
+                MySqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                MySqlIamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_NAME);
+    }
+
+    /**
+     * Resolves the delegate driver by class name, or by scheme name if no class name is given.
+     *
+     * @return the delegate driver, or null if neither identifies a driver
+     * @throws SQLException if the driver class could not be loaded
+     */
+    Driver resolve(String driverClassName, String schemeName) throws SQLException {
+        if (driverClassName == null && schemeName != null) {
+            driverClassName = classNamesByScheme.get(schemeName);
+        }
+        if (driverClassName == null) {
+            return null;
+        }
+        Driver driver = driversByClassName.get(driverClassName);
+        if (driver == null) {
+            driver = load(driverClassName);
+            Driver existing = driversByClassName.putIfAbsent(driverClassName, driver);
+            if (existing != null) {
+                driver = existing;
+            }
+        }
+        if (schemeName != null) {
+            classNamesByScheme.putIfAbsent(schemeName, driverClassName);
+        }
+        return driver;
+    }
+
+    /** Registers an already instantiated delegate driver, replacing any previously resolved one. */
+    void register(String schemeName, Driver driver) {
+        String driverClassName = driver.getClass().getName();
+        driversByClassName.put(driverClassName, driver);
+        if (schemeName != null) {
+            classNamesByScheme.put(schemeName, driverClassName);
+        }
+    }
+
+    private static Driver load(String driverClassName) throws SQLException {
+        Driver registered = findRegisteredDriver(driverClassName);
+        if (registered != null) {
+            return registered;
+        }
+        try {
+            Class<? extends Driver> driverClass =
+                    Class.forName(driverClassName).asSubclass(Driver.class);
+            return driverClass.getDeclaredConstructor().newInstance();
+        } catch (Exception | LinkageError e) {
+            if (System.getProperty(NATIVE_IMAGE_PROPERTY) != null) {
+                throw new SQLException(
+                        "Unable to load delegate JDBC driver "
+                                + driverClassName
+                                + " in a native image, register it with DriverManager or"
+                                + " IamAuthJdbcDriverWrapper.registerDelegateDriver, or for"
+                                + " reflection",
+                        e);
+            }
+            throw new SQLException("Unable to load delegate JDBC driver", e);
+        }
+    }
+
+    /** The instance of the driver class registered with {@link DriverManager}, if any. */
+    private static Driver findRegisteredDriver(String driverClassName) {
+        Enumeration<Driver> drivers = DriverManager.getDrivers();
+        while (drivers.hasMoreElements()) {
+            Driver driver = drivers.nextElement();
+            if (driver.getClass().getName().equals(driverClassName)) {
+                return driver;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,340 @@
+package io.magj.iamjdbcdriver;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+/**
+ * A {@link DataSource} that connects with RDS IAM auth tokens, calling the delegate driver
+ * directly rather than through {@link java.sql.DriverManager}.
+ *
+ * <p>Configured once with a URL and the same properties accepted by {@link
+ * IamAuthJdbcDriverWrapper}. On the first connect the URL is parsed, and the delegate driver and
+ * token settings resolved, after which each connect only generates, or looks up the cached, token
+ * and calls the delegate driver. Changing any setting causes them to be resolved again on the next
+ * connect.
+ *
+ * <p>The wrapper is chosen from the URL scheme, {@code jdbc:iampostgresql:} or {@code
+ * jdbc:iammysql:}, unless set with {@link #setDriver(IamAuthJdbcDriverWrapper)}. Other URLs
+ * require the {@link IamAuthJdbcDriverWrapper#DELEGATE_DRIVER_CLASS_PROPERTY} property.
+ *
+ * <p>As a {@link ConnectionPoolDataSource}, each pooled connection holds one physical connection,
+ * authenticated with a token when it is created.
+ */
+public class IamAuthDataSource implements DataSource, ConnectionPoolDataSource {
+
+    private static final Logger LOGGER = Logger.getLogger(IamAuthDataSource.class.getName());
+
+    private final Properties properties = new Properties();
+    private String url;
+    private IamAuthJdbcDriverWrapper driver;
+    private volatile int loginTimeout;
+    private volatile PrintWriter logWriter;
+
+    /** The resolved connect, or null until the next connect resolves it. */
+    private volatile Prepared prepared;
+
+    public IamAuthDataSource() {}
+
+    public IamAuthDataSource(String url) {
+        setUrl(url);
+    }
+
+    public synchronized String getUrl() {
+        return url;
+    }
+
+    public synchronized void setUrl(String url) {
+        this.url = url;
+        prepared = null;
+    }
+
+    public synchronized IamAuthJdbcDriverWrapper getDriver() {
+        return driver;
+    }
+
+    /**
+     * Sets the wrapper to connect through, for URLs of other schemes, or wrappers with custom
+     * user or password properties.
+     */
+    public synchronized void setDriver(IamAuthJdbcDriverWrapper driver) {
+        this.driver = driver;
+        prepared = null;
+    }
+
+    public String getUser() {
+        return getProperty(IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY);
+    }
+
+    public void setUser(String user) {
+        setProperty(IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY, user);
+    }
+
+    public String getAwsRegion() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY);
+    }
+
+    public void setAwsRegion(String awsRegion) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY, awsRegion);
+    }
+
+    public String getAwsProfile() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY);
+    }
+
+    public void setAwsProfile(String awsProfile) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY, awsProfile);
+    }
+
+    public String getAwsAccessKeyId() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY);
+    }
+
+    public void setAwsAccessKeyId(String awsAccessKeyId) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY, awsAccessKeyId);
+    }
+
+    public String getAwsSecretAccessKey() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY);
+    }
+
+    public void setAwsSecretAccessKey(String awsSecretAccessKey) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY, awsSecretAccessKey);
+    }
+
+    public String getAwsStsCredentialProviderRoleArn() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY);
+    }
+
+    public void setAwsStsCredentialProviderRoleArn(String roleArn) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY, roleArn);
+    }
+
+    public String getAwsStsCredentialProviderSessionName() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY);
+    }
+
+    public void setAwsStsCredentialProviderSessionName(String sessionName) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY, sessionName);
+    }
+
+    public String getAwsStsCredentialProviderExternalId() {
+        return getProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_EXTERNAL_ID_PROPERTY);
+    }
+
+    public void setAwsStsCredentialProviderExternalId(String externalId) {
+        setProperty(IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_EXTERNAL_ID_PROPERTY, externalId);
+    }
+
+    public synchronized String getProperty(String name) {
+        return properties.getProperty(name);
+    }
+
+    /**
+     * Sets a property passed to the wrapper and delegate driver on every connect, or removes it if
+     * the value is null.
+     */
+    public synchronized void setProperty(String name, String value) {
+        if (value == null) {
+            properties.remove(name);
+        } else {
+            properties.setProperty(name, value);
+        }
+        prepared = null;
+    }
+
+    /** A copy of the properties passed to the wrapper and delegate driver on every connect. */
+    public synchronized Properties getProperties() {
+        return (Properties) properties.clone();
+    }
+
+    /** Replaces every property passed to the wrapper and delegate driver on every connect. */
+    public synchronized void setProperties(Properties properties) {
+        this.properties.clear();
+        if (properties != null) {
+            for (String name : properties.stringPropertyNames()) {
+                this.properties.setProperty(name, properties.getProperty(name));
+            }
+        }
+        prepared = null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Prepared current = prepared();
+        Connection connection =
+                current.driver.connect(
+                        current.connect, (Properties) current.properties.clone(), null);
+        if (connection == null) {
+            throw new SQLException("No connection returned for URL: " + current.url);
+        }
+        return connection;
+    }
+
+    /**
+     * Connects as the given user. The password is ignored, as an RDS IAM auth token is used in its
+     * place.
+     *
+     * <p>Connects as any user other than the configured one are resolved in full on every call.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Prepared current = prepared();
+        if (username == null
+                || username.equals(current.properties.getProperty(current.userProperty))) {
+            return getConnection();
+        }
+        Properties connectionProperties = (Properties) current.properties.clone();
+        connectionProperties.setProperty(current.userProperty, username);
+        Connection connection = current.driver.connect(current.url, connectionProperties);
+        if (connection == null) {
+            throw new SQLException("No connection returned for URL: " + current.url);
+        }
+        return connection;
+    }
+
+    @Override
+    public PooledConnection getPooledConnection() throws SQLException {
+        return new IamAuthPooledConnection(getConnection());
+    }
+
+    @Override
+    public PooledConnection getPooledConnection(String user, String password)
+            throws SQLException {
+        return new IamAuthPooledConnection(getConnection(user, password));
+    }
+
+    private Prepared prepared() throws SQLException {
+        Prepared current = prepared;
+        if (current == null) {
+            synchronized (this) {
+                current = prepared;
+                if (current == null) {
+                    current = prepare();
+                    prepared = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Prepared prepare() throws SQLException {
+        if (url == null) {
+            throw new SQLException("No JDBC URL configured");
+        }
+        IamAuthJdbcDriverWrapper wrapper = driver != null ? driver : defaultDriver(url);
+        Properties connectProperties = (Properties) properties.clone();
+        if (loginTimeout > 0
+                && connectProperties.getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY)
+                        == null) {
+            connectProperties.setProperty(
+                    IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY,
+                    Integer.toString(loginTimeout));
+        }
+        PreparedConnect connect = wrapper.prepare(url, connectProperties);
+        if (connect == null) {
+            throw new SQLException(
+                    "URL not accepted by " + wrapper.getClass().getName() + ": " + url);
+        }
+        LOGGER.fine(() -> "Prepared data source connect: " + connect);
+        return new Prepared(url, wrapper, connectProperties, connect);
+    }
+
+    private static IamAuthJdbcDriverWrapper defaultDriver(String url) {
+        // Plain wrappers for the scheme, as loading a wrapper subclass registers it with
+        // DriverManager
+        if (url.startsWith(
+                IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX
+                        + PostgreSqlIamAuthJdbcDriverWrapper.SCHEME_NAME
+                        + ":")) {
+            return new IamAuthJdbcDriverWrapper(
+                    PostgreSqlIamAuthJdbcDriverWrapper.SCHEME_NAME,
+                    PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                    PostgreSqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                    PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_NAME,
+                    false);
+        } else if (url.startsWith(
+                IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX
+                        + MySqlIamAuthJdbcDriverWrapper.SCHEME_NAME
+                        + ":")) {
+            return new IamAuthJdbcDriverWrapper(
+                    MySqlIamAuthJdbcDriverWrapper.SCHEME_NAME,
+                    MySqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME,
+                    MySqlIamAuthJdbcDriverWrapper.DEFAULT_PORT,
+                    MySqlIamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_NAME,
+                    false);
+        }
+        return new IamAuthJdbcDriverWrapper();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    /**
+     * Bounds the time each connect may take, including credential resolution and token
+     * generation, unless the {@code loginTimeout} property is set. Zero means no timeout.
+     */
+    @Override
+    public synchronized void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+        prepared = null;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return Logger.getLogger(IamAuthDataSource.class.getPackage().getName());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /** A snapshot of the settings, along with the connect resolved from them. */
+    private static final class Prepared {
+        private final String url;
+        private final IamAuthJdbcDriverWrapper driver;
+        private final Properties properties;
+        private final PreparedConnect connect;
+        private final String userProperty;
+
+        private Prepared(
+                String url,
+                IamAuthJdbcDriverWrapper driver,
+                Properties properties,
+                PreparedConnect connect) {
+            this.url = url;
+            this.driver = driver;
+            this.properties = properties;
+            this.connect = connect;
+            this.userProperty = Objects.requireNonNull(driver.getUserProperty());
+        }
+    }
+}
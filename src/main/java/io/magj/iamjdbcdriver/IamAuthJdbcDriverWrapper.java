@@ -1,18 +1,10 @@
 package io.magj.iamjdbcdriver;
 
+import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.auth.profile.ProfileCredentialsProvider;
-import com.amazonaws.auth.profile.internal.securitytoken.RoleInfo;
-import com.amazonaws.auth.profile.internal.securitytoken.STSProfileCredentialsServiceProvider;
-import com.amazonaws.regions.AwsProfileRegionProvider;
 import com.amazonaws.regions.DefaultAwsRegionProviderChain;
-import com.amazonaws.services.rds.auth.GetIamAuthTokenRequest;
 import com.amazonaws.services.rds.auth.RdsIamAuthTokenGenerator;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
@@ -22,15 +14,28 @@ import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 public class IamAuthJdbcDriverWrapper implements Driver {
 
@@ -53,8 +58,8 @@ public class IamAuthJdbcDriverWrapper implements Driver {
     public static final String DELEGATE_DRIVER_SCHEME_NAME_PROPERTY =
             "delegateJdbcDriverSchemeName";
     /**
-     * The optional AWS region to use, if not specified, will use the {@link
-     * DefaultAwsRegionProviderChain} or a region from a configured profile
+     * The optional AWS region to use, if not specified, will use the region within an RDS
+     * hostname, a region from a configured profile, or the {@link DefaultAwsRegionProviderChain}
      */
     public static final String AWS_REGION_PROPERTY = "awsRegion";
     /** The optional name of an AWS profile to source credentials/region configuration from. */
@@ -64,7 +69,8 @@ public class IamAuthJdbcDriverWrapper implements Driver {
             "awsStsCredentialProviderRoleArn";
     /**
      * An optional session name to use if assuming a role. A random session name will be generated
-     * if not specified. This option has no effect if {@link #AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY}
+     * if not specified, and reused for as long as the assumed role credentials are cached. This
+     * option has no effect if {@link #AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY}
      * is not configured
      */
     public static final String AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY =
@@ -86,29 +92,143 @@ public class IamAuthJdbcDriverWrapper implements Driver {
      * must be configured in conjunction with {@link #AWS_ACCESS_KEY_ID_PROPERTY} or will be ignored
      */
     public static final String AWS_SECRET_ACCESS_KEY_PROPERTY = "awsSecretAccessKey";
+    /**
+     * Whether generated RDS IAM auth tokens should be cached and reused for new connections to the
+     * same host, port, user, region and credentials. Defaults to {@code true}
+     */
+    public static final String IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY = "iamAuthTokenCacheEnabled";
+    /**
+     * How long, in seconds, a cached RDS IAM auth token may be reused after it was generated.
+     * Tokens expire 15 minutes after generation, so values greater than 840 are capped at 840.
+     * Defaults to 600
+     */
+    public static final String IAM_AUTH_TOKEN_CACHE_REUSE_SECONDS_PROPERTY =
+            "iamAuthTokenCacheReuseSeconds";
+    /**
+     * Whether RDS IAM auth tokens should be regenerated in the background before they expire, for
+     * every endpoint that has been connected to, so that connecting never has to wait for a token
+     * to be generated after the first connection. Has no effect if {@link
+     * #IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY} is {@code false}. Defaults to {@code false}
+     */
+    public static final String IAM_AUTH_TOKEN_REFRESH_AHEAD_ENABLED_PROPERTY =
+            "iamAuthTokenRefreshAheadEnabled";
+    /**
+     * How long, in seconds, an endpoint may go without new connections before its RDS IAM auth
+     * token is no longer refreshed in the background. Defaults to 3600
+     */
+    public static final String IAM_AUTH_TOKEN_REFRESH_IDLE_TIMEOUT_SECONDS_PROPERTY =
+            "iamAuthTokenRefreshIdleTimeoutSeconds";
+    /**
+     * Which signer generates RDS IAM auth tokens, either {@code sdk} to use the AWS SDK's {@link
+     * RdsIamAuthTokenGenerator}, or {@code builtin} to use the driver's own presigner, which
+     * produces identical tokens but caches the derived signing key and allocates far less per
+     * token. Defaults to {@code sdk}
+     */
+    public static final String IAM_AUTH_TOKEN_SIGNER_PROPERTY = "iamAuthTokenSigner";
+    /**
+     * How to connect to URLs with multiple hosts, such as {@code
+     * jdbc:iampostgresql://host1:5432,host2:5432/database}. Either {@code sequential}, to try
+     * each host in turn until one connects, or {@code race}, to connect to every host at once and
+     * keep the first connection to open, closing the rest. Either way, an RDS IAM auth token is
+     * generated for every host in parallel, as a token is only valid for the host it was
+     * generated for. When trying hosts in turn, every token is generated up front, so that moving
+     * on to the next host does not wait for its token. Defaults to {@code sequential}
+     */
+    public static final String IAM_AUTH_MULTI_HOST_MODE_PROPERTY = "iamAuthMultiHostMode";
+    /**
+     * How long, in milliseconds, to stop generating RDS IAM auth tokens with the same credentials
+     * after generation fails, for example during an instance metadata or STS outage. In the
+     * meantime, connects that need a new token fail immediately rather than repeating the failing
+     * lookup. Doubles after each consecutive failure, up to {@link
+     * #IAM_AUTH_FAILURE_MAX_BACKOFF_MILLIS_PROPERTY}. Defaults to 0, which disables backing off
+     */
+    public static final String IAM_AUTH_FAILURE_BACKOFF_MILLIS_PROPERTY =
+            "iamAuthFailureBackoffMillis";
+    /**
+     * The longest, in milliseconds, that token generation backs off for after consecutive
+     * failures. Defaults to 60000
+     */
+    public static final String IAM_AUTH_FAILURE_MAX_BACKOFF_MILLIS_PROPERTY =
+            "iamAuthFailureMaxBackoffMillis";
+    /**
+     * Whether connects should fail with an {@link SQLException} when an RDS IAM auth token cannot
+     * be generated, rather than calling the delegate driver without a token, to be rejected by the
+     * database. Defaults to {@code false}
+     */
+    public static final String IAM_AUTH_FAIL_FAST_PROPERTY = "iamAuthFailFast";
+    /**
+     * Whether a connect should be retried once, with a newly generated RDS IAM auth token, when
+     * the database rejects the token, for example after the credentials it was signed with were
+     * rotated, or the clock was skewed when it was signed. The rejected token is removed from the
+     * token cache, and the credentials refreshed, before generating the new token. Only rejections
+     * recognised from PostgreSQL and MySQL compatible drivers are retried, and only within the
+     * {@link DriverManager#getLoginTimeout() login timeout}. Defaults to {@code false}
+     */
+    public static final String IAM_AUTH_RETRY_REJECTED_TOKEN_PROPERTY =
+            "iamAuthRetryRejectedToken";
+    /**
+     * The most new connections per second to make to each database host and port, across every
+     * wrapper instance in the JVM, to stay under the rate of new IAM authenticated connections
+     * that RDS allows per instance. Connects beyond it wait their turn, first come, first served,
+     * or fail with an {@link SQLException} if their turn would come after the {@link
+     * DriverManager#getLoginTimeout() login timeout}. 0 disables limiting. Defaults to 0
+     */
+    public static final String IAM_AUTH_CONNECT_RATE_LIMIT_PROPERTY = "iamAuthConnectRateLimit";
+    /**
+     * How many connects may be made to a host at once, without waiting, after no connects have
+     * been made to it for a while. Has no effect if {@link #IAM_AUTH_CONNECT_RATE_LIMIT_PROPERTY}
+     * is not configured. Defaults to the rate limit, one second's worth of connects
+     */
+    public static final String IAM_AUTH_CONNECT_RATE_LIMIT_BURST_PROPERTY =
+            "iamAuthConnectRateLimitBurst";
 
     public static final String DEFAULT_PASSWORD_PROPERTY = "password";
     public static final String DEFAULT_USER_PROPERTY = "user";
-    private static final String JDBC_URL_PREFIX = "jdbc:";
+    static final String JDBC_URL_PREFIX = "jdbc:";
+    /** The delegate's login timeout, in seconds, as taken by PostgreSQL. */
+    static final String LOGIN_TIMEOUT_PROPERTY = "loginTimeout";
+    /** The delegate's connect timeout, in milliseconds for MySQL and MariaDB, otherwise seconds. */
+    private static final String CONNECT_TIMEOUT_PROPERTY = "connectTimeout";
+    private static final String SEQUENTIAL_MULTI_HOST_MODE = "sequential";
+    private static final String RACE_MULTI_HOST_MODE = "race";
+    /** Unable to establish the connection, so that callers don't treat it as a bad password. */
+    private static final String CONNECTION_NOT_ESTABLISHED_SQL_STATE = "08001";
+    /** Invalid password, from PostgreSQL. */
+    private static final String INVALID_PASSWORD_SQL_STATE = "28P01";
+    /** Invalid authorization specification, from PostgreSQL, and MySQL drivers for error 1045. */
+    private static final String INVALID_AUTHORIZATION_SQL_STATE = "28000";
+    /** ER_ACCESS_DENIED_ERROR, from MySQL and MariaDB. */
+    private static final int MYSQL_ACCESS_DENIED_ERROR_CODE = 1045;
+
+    private static final SingleFlight<RdsIamAuthTokenKey, String> TOKEN_GENERATIONS =
+            new SingleFlight<>();
+    private static final SingleFlight<CredentialProviderKey, AWSCredentials> CREDENTIAL_REQUESTS =
+            new SingleFlight<>();
+    private static final IamAuthMetrics METRICS =
+            new IamAuthMetrics(TOKEN_GENERATIONS, CREDENTIAL_REQUESTS);
+    private static final RdsIamAuthTokenCache TOKEN_CACHE =
+            new RdsIamAuthTokenCache(TOKEN_GENERATIONS, METRICS);
+    private static final TokenGenerationCircuitBreaker CIRCUIT_BREAKER =
+            new TokenGenerationCircuitBreaker(METRICS);
+    private static final ConnectRateLimiter CONNECT_RATE_LIMITER = new ConnectRateLimiter(METRICS);
+    private static final DelegateDriverRegistry DELEGATE_DRIVERS = new DelegateDriverRegistry();
 
     static {
         initialiseDriverRegistration(new IamAuthJdbcDriverWrapper());
     }
 
-    private final DefaultAwsRegionProviderChain defaultAwsRegionProviderChain =
-            new DefaultAwsRegionProviderChain();
-    private final DefaultAWSCredentialsProviderChain defaultAWSCredentialsProviderChain =
-            DefaultAWSCredentialsProviderChain.getInstance();
-
     private final String wrapperSchemeName;
     private final String passwordProperty;
     private final String userProperty;
     private final Integer defaultPort;
     private final String driverClassName;
     private final boolean acceptDelegateUrls;
+    private final String wrapperPrefix;
+    private final JdbcUrlDescriptorCache urlDescriptors =
+            new JdbcUrlDescriptorCache(JdbcUrlDescriptorCache.DEFAULT_MAX_SIZE);
 
-    private Driver delegate;
-    private String delegateSchemeName;
+    private final String delegateSchemeName;
+    private RdsIamAuthTokenRefresher tokenRefresher;
 
     /**
      * Creates a delegateless IAM Auth JDBC wrapper.
@@ -151,6 +271,13 @@ public class IamAuthJdbcDriverWrapper implements Driver {
         this.defaultPort = defaultPort;
         this.driverClassName = driverClassName;
         this.acceptDelegateUrls = acceptDelegateUrls;
+        this.wrapperPrefix =
+                wrapperSchemeName == null ? null : JDBC_URL_PREFIX + wrapperSchemeName + ":";
+    }
+
+    /** The connection property the user to generate tokens for is read from. */
+    String getUserProperty() {
+        return userProperty;
     }
 
     protected static void initialiseDriverRegistration(IamAuthJdbcDriverWrapper driver) {
@@ -166,23 +293,41 @@ public class IamAuthJdbcDriverWrapper implements Driver {
                                     + driver.defaultPort
                                     + ", driverClassName="
                                     + driver.driverClassName);
-            DriverManager.registerDriver(driver);
+            DriverManager.registerDriver(driver, driver::deregister);
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "Error registering IAM driver wrapper", e);
             throw new ExceptionInInitializerError(e);
         }
     }
 
-    private static Map<String, String> mergeProperties(
+    /** Releases any background resources held by this instance. */
+    private void deregister() {
+        LOGGER.fine(
+                () -> "Deregistering IAM driver wrapper: wrapperSchemeName=" + wrapperSchemeName);
+        RdsIamAuthTokenRefresher refresher;
+        synchronized (this) {
+            refresher = tokenRefresher;
+            tokenRefresher = null;
+        }
+        if (refresher != null) {
+            refresher.shutdown();
+        }
+    }
+
+    private synchronized RdsIamAuthTokenRefresher tokenRefresher() {
+        if (tokenRefresher == null) {
+            tokenRefresher = new RdsIamAuthTokenRefresher(TOKEN_CACHE);
+        }
+        return tokenRefresher;
+    }
+
+    static Map<String, String> mergeProperties(
             Properties properties, Map<String, String> uriProperties) {
-        Map<String, String> merged = new HashMap<>();
-        properties.stringPropertyNames().forEach(sp -> merged.put(sp, properties.getProperty(sp)));
         // URI properties take precedence over connection properties.
         // This is in-line with the behavior of JDBC drivers like postgres
         // It also makes sense, since we use URI properties are used in certain situations to
         // resolve the driver, before connection properties are available
-        merged.putAll(uriProperties);
-        return merged;
+        return new MergedProperties(uriProperties, properties);
     }
 
     public static Map<String, String> parseQueryString(URI uri) {
@@ -220,44 +365,67 @@ public class IamAuthJdbcDriverWrapper implements Driver {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private static Driver resolveDriver(String driverClassName)
-            throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException,
-                    InvocationTargetException, InstantiationException {
-        Class<Driver> driverClass = (Class<Driver>) Class.forName(driverClassName);
-        return driverClass.getDeclaredConstructor().newInstance();
-    }
-
     @Override
     public boolean acceptsURL(String url) throws SQLException {
         assertUrlNotNull(url);
-        URI parsed = parseJdbcUrl(url);
-        attemptResolveDelegateDriverDetails(parsed);
-        if (isWrapperScheme(parsed)) {
+        if (!url.startsWith(JDBC_URL_PREFIX)) {
+            return false;
+        }
+        if (isWrapperUrl(url)) {
             return true;
-        } else if (delegate != null && acceptDelegateUrls) {
-            return delegate.acceptsURL(url);
-        } else {
+        }
+        if (!mayAcceptDelegateUrl(url, null)) {
             return false;
         }
+        Driver delegate = attemptResolveDelegateDriver(describe(url).getQueryProperties());
+        return delegate != null && delegate.acceptsURL(url);
     }
 
-    private void attemptResolveDelegateDriverDetails(URI uri) {
-        if (uri != null) {
-            Map<String, String> uriProperties = parseQueryString(uri);
-            attemptDelegateDriverResolve(uriProperties);
-            resolveDelegateSchemeName(uriProperties);
+    private boolean isWrapperUrl(String url) {
+        return wrapperPrefix != null && url.startsWith(wrapperPrefix);
+    }
+
+    /**
+     * Rules out delegate URLs that this wrapper could never accept, without needing to parse them.
+     */
+    private boolean mayAcceptDelegateUrl(String url, Properties connectionProperties) {
+        if (!acceptDelegateUrls) {
+            return false;
+        }
+        if (driverClassName != null || delegateSchemeName != null) {
+            return true;
         }
+        return url.contains(DELEGATE_DRIVER_CLASS_PROPERTY)
+                || url.contains(DELEGATE_DRIVER_SCHEME_NAME_PROPERTY)
+                || (connectionProperties != null
+                        && (connectionProperties.getProperty(DELEGATE_DRIVER_CLASS_PROPERTY) != null
+                                || connectionProperties.getProperty(
+                                                DELEGATE_DRIVER_SCHEME_NAME_PROPERTY)
+                                        != null));
     }
 
-    private boolean isWrapperScheme(URI parsed) {
-        return wrapperSchemeName != null
-                && parsed != null
-                && wrapperSchemeName.equals(parsed.getScheme());
+    /**
+     * Returns the parsed form of the URL, from a bounded cache of previously parsed URLs that don't
+     * carry secrets where possible.
+     */
+    private JdbcUrlDescriptor describe(String url) {
+        JdbcUrlDescriptor descriptor = urlDescriptors.get(url);
+        if (descriptor == null) {
+            descriptor = JdbcUrlDescriptor.parse(url, wrapperPrefix, delegateSchemeName);
+            urlDescriptors.put(
+                    descriptor,
+                    passwordProperty,
+                    DEFAULT_PASSWORD_PROPERTY,
+                    AWS_SECRET_ACCESS_KEY_PROPERTY);
+        }
+        return descriptor;
     }
 
-    private String replaceScheme(String url) {
-        return url.replaceFirst(Pattern.quote(wrapperSchemeName), delegateSchemeName);
+    String replaceScheme(String url, String delegateSchemeName) throws SQLException {
+        if (delegateSchemeName == null) {
+            throw new SQLException("No delegate JDBC driver scheme name configured");
+        }
+        return JdbcUrlDescriptor.replaceScheme(url, wrapperPrefix, delegateSchemeName);
     }
 
     private void assertUrlNotNull(String url) throws SQLException {
@@ -266,88 +434,924 @@ public class IamAuthJdbcDriverWrapper implements Driver {
         }
     }
 
-    private URI parseJdbcUrl(String url) {
-        if (url == null || !url.startsWith(JDBC_URL_PREFIX)) {
+    @Override
+    public Connection connect(String url, Properties connectionProperties) throws SQLException {
+        return connect(url, connectionProperties, null);
+    }
+
+    /**
+     * Opens a connection on the default asynchronous connect executor, which uses virtual threads
+     * where the JVM supports them.
+     *
+     * @see #connectAsync(String, Properties, Executor)
+     */
+    public CompletableFuture<Connection> connectAsync(String url, Properties connectionProperties) {
+        return connectAsync(url, connectionProperties, ConnectExecutors.defaultExecutor());
+    }
+
+    /**
+     * Opens a connection on the given executor.
+     *
+     * <p>The connection properties are copied before connecting, so the same properties may be
+     * passed to many concurrent calls. The future completes exceptionally with an {@link
+     * SQLException} if the connection could not be opened, or if the URL is not accepted by this
+     * driver.
+     */
+    public CompletableFuture<Connection> connectAsync(
+            String url, Properties connectionProperties, Executor executor) {
+        return connectAsync(url, copyProperties(connectionProperties), null, executor);
+    }
+
+    /**
+     * Opens {@code count} connections in parallel on the default asynchronous connect executor.
+     *
+     * @see #warmUp(String, Properties, int, Executor)
+     */
+    public CompletableFuture<List<Connection>> warmUp(
+            String url, Properties connectionProperties, int count) {
+        return warmUp(url, connectionProperties, count, ConnectExecutors.defaultExecutor());
+    }
+
+    /**
+     * Opens {@code count} connections in parallel on the given executor, for example to fill a
+     * connection pool at startup.
+     *
+     * <p>The RDS IAM auth token is generated once, and then shared by every connection. If any
+     * connection fails to open, the connections that did open are closed and the future completes
+     * exceptionally with the first failure.
+     */
+    public CompletableFuture<List<Connection>> warmUp(
+            String url, Properties connectionProperties, int count, Executor executor) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative: " + count);
+        }
+        Properties warmUpProperties = copyProperties(connectionProperties);
+        return CompletableFuture.supplyAsync(
+                        () -> attemptGenerateRdsIamAuthToken(url, warmUpProperties), executor)
+                .thenCompose(
+                        rdsIamAuthToken -> {
+                            List<CompletableFuture<Connection>> connections =
+                                    new ArrayList<>(count);
+                            for (int i = 0; i < count; i++) {
+                                connections.add(
+                                        connectAsync(
+                                                url,
+                                                copyProperties(warmUpProperties),
+                                                rdsIamAuthToken,
+                                                executor));
+                            }
+                            return allConnections(connections);
+                        });
+    }
+
+    private CompletableFuture<Connection> connectAsync(
+            String url,
+            Properties connectionProperties,
+            String rdsIamAuthToken,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    try {
+                        Connection connection =
+                                connect(url, connectionProperties, rdsIamAuthToken);
+                        if (connection == null) {
+                            throw new SQLException("No connection returned for URL: " + url);
+                        }
+                        return connection;
+                    } catch (SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                },
+                executor);
+    }
+
+    private static CompletableFuture<List<Connection>> allConnections(
+            List<CompletableFuture<Connection>> connections) {
+        return CompletableFuture.allOf(connections.toArray(new CompletableFuture<?>[0]))
+                .handle(
+                        (ignored, failure) -> {
+                            if (failure == null) {
+                                List<Connection> opened = new ArrayList<>(connections.size());
+                                connections.forEach(connection -> opened.add(connection.join()));
+                                return opened;
+                            }
+                            connections.forEach(
+                                    connection ->
+                                            connection.thenAccept(
+                                                    IamAuthJdbcDriverWrapper::closeQuietly));
+                            throw failure instanceof CompletionException
+                                    ? (CompletionException) failure
+                                    : new CompletionException(failure);
+                        });
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing connection", e);
+        }
+    }
+
+    private static Properties copyProperties(Properties properties) {
+        Properties copy = new Properties();
+        if (properties != null) {
+            properties
+                    .stringPropertyNames()
+                    .forEach(name -> copy.setProperty(name, properties.getProperty(name)));
+        }
+        return copy;
+    }
+
+    /**
+     * Generates the token that {@code connect} would generate for the URL and properties, or
+     * returns null if it could not be generated, leaving each connect to try again.
+     */
+    private String attemptGenerateRdsIamAuthToken(String url, Properties connectionProperties) {
+        try {
+            PreparedConnect prepared = prepare(url, connectionProperties);
+            if (prepared == null || prepared.isMultiHost()) {
+                // Tokens are only used for single host URLs
+                return null;
+            }
+            return generateRdsIamAuthToken(prepared.getTokenRequest(0));
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "RDS IAM auth token generation for warm up failed", e);
             return null;
         }
-        String substring = url.substring(JDBC_URL_PREFIX.length());
-        return URI.create(substring);
     }
 
-    @Override
-    public Connection connect(String url, Properties connectionProperties) throws SQLException {
-        if (!acceptsURL(url)) {
+    /**
+     * @param rdsIamAuthToken a token that has already been generated for this connection, or null
+     *     to generate one
+     */
+    private Connection connect(
+            String url, Properties connectionProperties, String rdsIamAuthToken)
+            throws SQLException {
+        PreparedConnect prepared = prepare(url, connectionProperties);
+        if (prepared == null) {
+            return null;
+        }
+        if (connectionProperties == null) {
+            connectionProperties = new Properties();
+        }
+        return connect(prepared, connectionProperties, rdsIamAuthToken);
+    }
+
+    /**
+     * Works out everything needed to connect to the URL with the given properties, short of
+     * generating the token, so that it can be reused for any number of connects with the same URL
+     * and properties.
+     *
+     * @return null if this driver does not accept the URL
+     */
+    PreparedConnect prepare(String url, Properties connectionProperties) throws SQLException {
+        assertUrlNotNull(url);
+        if (!url.startsWith(JDBC_URL_PREFIX)) {
+            return null;
+        }
+        boolean wrapperUrl = isWrapperUrl(url);
+        if (!wrapperUrl && !mayAcceptDelegateUrl(url, connectionProperties)) {
             return null;
         }
-        URI parsed = parseJdbcUrl(url);
+        if (connectionProperties == null) {
+            connectionProperties = new Properties();
+        }
+        JdbcUrlDescriptor descriptor = describe(url);
 
         Map<String, String> properties =
-                mergeProperties(connectionProperties, parseQueryString(parsed));
-        resolveDelegateDriver(properties);
-        resolveDelegateSchemeName(properties);
+                mergeProperties(connectionProperties, descriptor.getQueryProperties());
+        final Driver delegate;
+        if (wrapperUrl) {
+            delegate = resolveDelegateDriver(properties);
+        } else {
+            delegate = attemptResolveDelegateDriver(properties);
+            if (delegate == null || !delegate.acceptsURL(url)) {
+                return null;
+            }
+        }
+
+        String connectUrl = descriptor.getConnectUrl();
+        if (connectUrl == null) {
+            connectUrl = replaceScheme(url, delegateSchemeName(properties));
+        }
+
+        List<JdbcUrlDescriptor.Endpoint> endpoints = descriptor.getEndpoints();
+        int requestCount = Math.max(1, endpoints.size());
+        RdsIamAuthTokenRequest[] tokenRequests = new RdsIamAuthTokenRequest[requestCount];
+        Exception[] tokenRequestFailures = new Exception[requestCount];
+        long connectRateLimit;
+        long connectRateLimitBurst;
+        try {
+            connectRateLimit = longProperty(properties, IAM_AUTH_CONNECT_RATE_LIMIT_PROPERTY, 0);
+            connectRateLimitBurst =
+                    longProperty(
+                            properties,
+                            IAM_AUTH_CONNECT_RATE_LIMIT_BURST_PROPERTY,
+                            connectRateLimit);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        String[] connectRateLimitKeys =
+                connectRateLimit > 0 ? new String[endpoints.size()] : null;
+        String delegateTimeoutProperty = delegateTimeoutProperty(connectUrl);
+        String user = properties.get(userProperty);
+        for (int i = 0; i < requestCount; i++) {
+            // Failures are kept rather than thrown, as connects may continue without a token
+            try {
+                JdbcUrlDescriptor.Endpoint endpoint = endpoints.isEmpty() ? null : endpoints.get(i);
+                tokenRequests[i] =
+                        RdsIamAuthTokenRequest.from(
+                                host(endpoint == null ? null : endpoint.getUriHost()),
+                                port(endpoint == null ? -1 : endpoint.getPort()),
+                                user,
+                                properties);
+            } catch (SQLException | IllegalArgumentException e) {
+                tokenRequestFailures[i] = e;
+            }
+            if (connectRateLimitKeys != null && !endpoints.isEmpty()) {
+                JdbcUrlDescriptor.Endpoint endpoint = endpoints.get(i);
+                connectRateLimitKeys[i] =
+                        endpoint.getUriHost()
+                                + ":"
+                                + (endpoint.getPort() == -1 && defaultPort != null
+                                        ? defaultPort
+                                        : endpoint.getPort());
+            }
+        }
+        return new PreparedConnect(
+                delegate,
+                connectUrl,
+                endpoints,
+                tokenRequests,
+                tokenRequestFailures,
+                booleanProperty(properties, IAM_AUTH_FAIL_FAST_PROPERTY, false),
+                endpoints.size() > 1 && raceMultiHost(properties),
+                booleanProperty(properties, IAM_AUTH_RETRY_REJECTED_TOKEN_PROPERTY, false),
+                connectRateLimit,
+                connectRateLimitBurst,
+                connectRateLimitKeys,
+                loginTimeoutNanos(
+                        properties, CONNECT_TIMEOUT_PROPERTY.equals(delegateTimeoutProperty)),
+                delegateTimeoutProperty);
+    }
+
+    /**
+     * The delegate's property that the rest of the login timeout is passed on in, or null for
+     * delegates whose timeout properties are not known.
+     */
+    private static String delegateTimeoutProperty(String connectUrl) {
+        if (connectUrl.startsWith(JDBC_URL_PREFIX + "postgresql:")) {
+            return LOGIN_TIMEOUT_PROPERTY;
+        } else if (connectUrl.startsWith(JDBC_URL_PREFIX + "mysql:")
+                || connectUrl.startsWith(JDBC_URL_PREFIX + "mariadb:")) {
+            return CONNECT_TIMEOUT_PROPERTY;
+        }
+        return null;
+    }
+
+    /**
+     * The smaller of the login and connect timeouts set in the properties, or 0 if neither is.
+     * Values that can't be parsed are left for the delegate to report.
+     */
+    private static long loginTimeoutNanos(
+            Map<String, String> properties, boolean connectTimeoutMillis) {
+        long loginTimeoutNanos =
+                timeoutNanos(properties.get(LOGIN_TIMEOUT_PROPERTY), TimeUnit.SECONDS);
+        long connectTimeoutNanos =
+                timeoutNanos(
+                        properties.get(CONNECT_TIMEOUT_PROPERTY),
+                        connectTimeoutMillis ? TimeUnit.MILLISECONDS : TimeUnit.SECONDS);
+        if (loginTimeoutNanos <= 0 || connectTimeoutNanos <= 0) {
+            return Math.max(loginTimeoutNanos, connectTimeoutNanos);
+        }
+        return Math.min(loginTimeoutNanos, connectTimeoutNanos);
+    }
+
+    private static long timeoutNanos(String value, TimeUnit unit) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            // PostgreSQL allows fractional seconds
+            return (long) (Double.parseDouble(value.trim()) * unit.toNanos(1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Connects with the result of {@link #prepare(String, Properties)}, setting the token as the
+     * password in the given connection properties.
+     *
+     * @param rdsIamAuthToken a token that has already been generated for this connection, or null
+     *     to generate one
+     */
+    Connection connect(
+            PreparedConnect prepared, Properties connectionProperties, String rdsIamAuthToken)
+            throws SQLException {
+        METRICS.ensureRegistered();
+        long startNanos = nanoTime();
+        if (prepared.isMultiHost()) {
+            // Tokens are only valid for the host they were generated for, so any token that was
+            // generated in advance is not used
+            return connectMultiHost(prepared, connectionProperties, startNanos);
+        }
 
         try {
-            String host = host(parsed);
-            int port = port(parsed);
-            String rdsIamAuthToken = generateRdsIamAuthToken(host, port, properties);
+            if (rdsIamAuthToken == null) {
+                rdsIamAuthToken = generateRdsIamAuthToken(prepared, 0, null, startNanos);
+            }
 
             connectionProperties.setProperty(passwordProperty, rdsIamAuthToken);
+        } catch (SQLTransientException e) {
+            throw e;
         } catch (Exception e) {
+            tokenGenerationFailed(e, prepared.isFailFast());
+            rdsIamAuthToken = null;
+        }
+
+        return connectDelegate(
+                prepared,
+                0,
+                prepared.getConnectUrl(),
+                connectionProperties,
+                rdsIamAuthToken,
+                startNanos);
+    }
+
+    /**
+     * Either throws, if configured to fail fast, or logs the failure so that the caller may
+     * continue without a token.
+     */
+    private static void tokenGenerationFailed(Throwable e, boolean failFast) throws SQLException {
+        if (failFast) {
+            throw new SQLException(
+                    "RDS IAM auth token generation failed",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                    e);
+        }
+        if (e instanceof TokenGenerationCircuitBreaker.OpenException) {
+            // The failure that opened the circuit was already logged
+            LOGGER.fine(
+                    () ->
+                            e.getMessage()
+                                    + ", attempting to call delegate driver without IAM token");
+        } else {
             LOGGER.log(
                     Level.WARNING,
                     "RDS IAM auth token generation failed, attempting to call delegate driver without IAM token",
                     e);
         }
+        METRICS.connectedWithoutToken();
+    }
 
-        final String connectUrl = isWrapperScheme(parsed) ? replaceScheme(url) : url;
+    /**
+     * Connects with the token already set in the connection properties, within the connect rate
+     * limit, retrying once with a new token if configured to and the database rejects it.
+     *
+     * @param rdsIamAuthToken the token set in the connection properties, or null if there is none
+     * @param startNanos when the connect started, to judge whether the login timeout allows for a
+     *     retry
+     */
+    private Connection connectDelegate(
+            PreparedConnect prepared,
+            int index,
+            String connectUrl,
+            Properties connectionProperties,
+            String rdsIamAuthToken,
+            long startNanos)
+            throws SQLException {
+        try {
+            acquireConnectPermit(prepared, index, startNanos);
+            return connectDelegate(
+                    prepared.getDelegate(),
+                    connectUrl,
+                    withRemainingLoginTimeout(prepared, connectionProperties, startNanos));
+        } catch (SQLException e) {
+            if (rdsIamAuthToken == null
+                    || !prepared.isRetryRejectedToken()
+                    || !isTokenRejected(e)
+                    || loginTimeoutElapsed(prepared, startNanos)) {
+                throw e;
+            }
+            String regenerated;
+            try {
+                regenerated =
+                        generateRdsIamAuthToken(prepared, index, rdsIamAuthToken, startNanos);
+            } catch (Exception regenerationFailure) {
+                e.addSuppressed(regenerationFailure);
+                throw e;
+            }
+            LOGGER.log(
+                    Level.FINE, "RDS IAM auth token rejected, retrying with a new token", e);
+            METRICS.rejectedTokenRetried();
+            connectionProperties.setProperty(passwordProperty, regenerated);
+            try {
+                acquireConnectPermit(prepared, index, startNanos);
+                return connectDelegate(
+                        prepared.getDelegate(),
+                        connectUrl,
+                        withRemainingLoginTimeout(prepared, connectionProperties, startNanos));
+            } catch (SQLException retryFailure) {
+                retryFailure.addSuppressed(e);
+                throw retryFailure;
+            }
+        }
+    }
 
-        return delegate.connect(connectUrl, connectionProperties);
+    /** Whether the delegate failed because the database rejected the password it was given. */
+    private static boolean isTokenRejected(SQLException e) {
+        return INVALID_PASSWORD_SQL_STATE.equals(e.getSQLState())
+                || INVALID_AUTHORIZATION_SQL_STATE.equals(e.getSQLState())
+                || e.getErrorCode() == MYSQL_ACCESS_DENIED_ERROR_CODE;
     }
 
-    private void resolveDelegateSchemeName(Map<String, String> properties) {
-        if (delegateSchemeName != null) {
+    /**
+     * Waits for the connect rate limit of the host, if one is configured, for no longer than the
+     * rest of the login timeout.
+     */
+    private void acquireConnectPermit(PreparedConnect prepared, int index, long startNanos)
+            throws SQLException {
+        if (!prepared.isConnectRateLimited() || prepared.getEndpoints().isEmpty()) {
             return;
         }
-        delegateSchemeName = properties.get(DELEGATE_DRIVER_SCHEME_NAME_PROPERTY);
+        String endpoint = prepared.getConnectRateLimitKey(index);
+        boolean acquired;
+        try {
+            acquired =
+                    CONNECT_RATE_LIMITER.acquire(
+                            endpoint,
+                            prepared.getConnectRateLimit(),
+                            prepared.getConnectRateLimitBurst(),
+                            remainingLoginTimeoutNanos(prepared, startNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(
+                    "Interrupted while waiting for the connect rate limit to " + endpoint,
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                    e);
+        }
+        if (!acquired) {
+            throw new SQLException(
+                    "Connect rate limit of "
+                            + prepared.getConnectRateLimit()
+                            + " per second to "
+                            + endpoint
+                            + " would not allow a connect within the login timeout",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE);
+        }
+    }
+
+    /**
+     * Sets the delegate's own timeout to the rest of the login timeout, so that time spent on the
+     * token and the connect rate limit is not granted to the delegate a second time. The
+     * properties are copied first, as they may be the caller's, and reused for later connects.
+     *
+     * @throws SQLTimeoutException if the login timeout has already elapsed
+     */
+    private Properties withRemainingLoginTimeout(
+            PreparedConnect prepared, Properties connectionProperties, long startNanos)
+            throws SQLTimeoutException {
+        long remainingNanos = remainingLoginTimeoutNanos(prepared, startNanos);
+        if (remainingNanos == Long.MAX_VALUE) {
+            return connectionProperties;
+        }
+        if (remainingNanos <= 0) {
+            throw new SQLTimeoutException(
+                    "Login timeout elapsed before connecting to the database",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE);
+        }
+        String property = prepared.getDelegateTimeoutProperty();
+        if (property == null) {
+            return connectionProperties;
+        }
+        Properties delegateProperties = copyProperties(connectionProperties);
+        if (CONNECT_TIMEOUT_PROPERTY.equals(property)) {
+            long remainingMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+            delegateProperties.setProperty(property, Long.toString(remainingMillis));
+        } else {
+            double remainingSeconds = Math.max(0.001, remainingNanos / 1e9);
+            delegateProperties.setProperty(
+                    property, String.format(Locale.ROOT, "%.3f", remainingSeconds));
+        }
+        return delegateProperties;
+    }
+
+    private boolean loginTimeoutElapsed(PreparedConnect prepared, long startNanos) {
+        return remainingLoginTimeoutNanos(prepared, startNanos) <= 0;
+    }
+
+    /**
+     * The time left before the login timeout, or {@link Long#MAX_VALUE} if there is none. The
+     * login timeout is the smallest of those set with {@link DriverManager#setLoginTimeout(int)}
+     * and by property.
+     */
+    private long remainingLoginTimeoutNanos(PreparedConnect prepared, long startNanos) {
+        long timeoutNanos = prepared.getLoginTimeoutNanos();
+        int loginTimeoutSeconds = DriverManager.getLoginTimeout();
+        if (loginTimeoutSeconds > 0) {
+            long driverManagerTimeoutNanos = TimeUnit.SECONDS.toNanos(loginTimeoutSeconds);
+            timeoutNanos =
+                    timeoutNanos > 0
+                            ? Math.min(timeoutNanos, driverManagerTimeoutNanos)
+                            : driverManagerTimeoutNanos;
+        }
+        if (timeoutNanos <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return timeoutNanos - (nanoTime() - startNanos);
     }
 
-    private void attemptDelegateDriverResolve(Map<String, String> properties) {
+    private static Connection connectDelegate(
+            Driver delegate, String connectUrl, Properties connectionProperties)
+            throws SQLException {
+        long connectStart = System.nanoTime();
+        boolean connected = false;
         try {
-            resolveDelegateDriver(properties);
-        } catch (SQLException e) {
-            LOGGER.log(Level.FINE, "Attempt to resolve delegate driver failed", e);
+            Connection connection = delegate.connect(connectUrl, connectionProperties);
+            connected = connection != null;
+            return connection;
+        } finally {
+            METRICS.delegateConnected(System.nanoTime() - connectStart, connected);
         }
     }
 
-    private void resolveDelegateDriver(Map<String, String> properties) throws SQLException {
-        if (delegate != null) {
-            return;
+    /**
+     * Connects to one of the hosts of a multi-host URL, passing the delegate a single host URL
+     * along with the token for that host, so any options the delegate has for choosing between
+     * hosts, such as a target server type, are applied to each host in turn.
+     *
+     * <p>Either way, every host's token is generated up front, so that no host waits for its token
+     * once it is tried.
+     */
+    private Connection connectMultiHost(
+            PreparedConnect prepared, Properties connectionProperties, long startNanos)
+            throws SQLException {
+        List<JdbcUrlDescriptor.Endpoint> endpoints = prepared.getEndpoints();
+        List<CompletableFuture<String>> tokens = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            tokens.add(generateRdsIamAuthTokenAsync(prepared, i));
+        }
+        if (prepared.isRaceMultiHost()) {
+            return raceEndpoints(prepared, connectionProperties, tokens, startNanos);
+        }
+        SQLException[] failures = new SQLException[endpoints.size()];
+        for (int i = 0; i < endpoints.size(); i++) {
+            try {
+                Connection connection =
+                        connectEndpoint(
+                                prepared, i, connectionProperties, tokens.get(i), startNanos);
+                if (connection != null) {
+                    return connection;
+                }
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Connecting to host " + endpoints.get(i) + " failed", e);
+                failures[i] = e;
+            }
+        }
+        return failedEndpoints(endpoints, failures);
+    }
+
+    /**
+     * Connects to every host at once, each on its own thread, returning the first connection to
+     * open and closing any others once they open. Waits no longer than the login timeout, if there
+     * is one.
+     */
+    private Connection raceEndpoints(
+            PreparedConnect prepared,
+            Properties connectionProperties,
+            List<CompletableFuture<String>> tokens,
+            long startNanos)
+            throws SQLException {
+        List<JdbcUrlDescriptor.Endpoint> endpoints = prepared.getEndpoints();
+        CompletableFuture<Connection> first = new CompletableFuture<>();
+        SQLException[] failures = new SQLException[endpoints.size()];
+        AtomicInteger remaining = new AtomicInteger(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            int index = i;
+            Runnable connect =
+                    () -> {
+                        Connection connection = null;
+                        try {
+                            connection =
+                                    connectEndpoint(
+                                            prepared,
+                                            index,
+                                            connectionProperties,
+                                            tokens.get(index),
+                                            startNanos);
+                        } catch (SQLException e) {
+                            failures[index] = e;
+                        } catch (Throwable e) {
+                            failures[index] =
+                                    new SQLException(
+                                            "Error connecting to host " + endpoints.get(index),
+                                            CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                                            e);
+                        } finally {
+                            if (failures[index] != null) {
+                                LOGGER.log(
+                                        Level.FINE,
+                                        "Connecting to host " + endpoints.get(index) + " failed",
+                                        failures[index]);
+                            }
+                            // Once the race is decided, by another host or by the caller giving
+                            // up, a connection can only be closed
+                            if (connection != null && !first.complete(connection)) {
+                                closeQuietly(connection);
+                            }
+                            if (remaining.decrementAndGet() == 0) {
+                                // Every host failed, unless a connection already completed it
+                                first.complete(null);
+                            }
+                        }
+                    };
+            try {
+                ConnectExecutors.defaultExecutor().execute(connect);
+            } catch (RejectedExecutionException e) {
+                failures[index] =
+                        new SQLException(
+                                "No thread available to connect to host " + endpoints.get(index),
+                                CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                                e);
+                if (remaining.decrementAndGet() == 0) {
+                    first.complete(null);
+                }
+            }
+        }
+
+        Connection connection;
+        long remainingNanos = remainingLoginTimeoutNanos(prepared, startNanos);
+        try {
+            connection =
+                    remainingNanos == Long.MAX_VALUE
+                            ? first.get()
+                            : first.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (first.complete(null)) {
+                throw new SQLTimeoutException(
+                        "Login timeout elapsed before connecting to any of the hosts: "
+                                + endpoints,
+                        CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                        e);
+            }
+            // A connection opened as the timeout elapsed
+            connection = first.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (first.complete(null)) {
+                throw new SQLException(
+                        "Interrupted while connecting to hosts: " + endpoints,
+                        CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                        e);
+            }
+            connection = first.join();
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+            throw new SQLException("Error connecting to hosts: " + endpoints, e.getCause());
+        }
+        return connection != null ? connection : failedEndpoints(endpoints, failures);
+    }
+
+    /**
+     * @param token the token for the host, already being generated, or null if there was no
+     *     thread to generate it on up front
+     */
+    private Connection connectEndpoint(
+            PreparedConnect prepared,
+            int index,
+            Properties connectionProperties,
+            CompletableFuture<String> token,
+            long startNanos)
+            throws SQLException {
+        Properties endpointProperties = copyProperties(connectionProperties);
+        String rdsIamAuthToken = null;
+        try {
+            rdsIamAuthToken =
+                    token != null
+                            ? awaitToken(token, prepared, startNanos)
+                            : generateRdsIamAuthToken(prepared, index, null, startNanos);
+            endpointProperties.setProperty(passwordProperty, rdsIamAuthToken);
+        } catch (SQLTransientException e) {
+            throw e;
+        } catch (Exception e) {
+            tokenGenerationFailed(e, prepared.isFailFast());
+        }
+        return connectDelegate(
+                prepared,
+                index,
+                JdbcUrlDescriptor.replaceAuthority(
+                        prepared.getConnectUrl(), prepared.getEndpoints().get(index)),
+                endpointProperties,
+                rdsIamAuthToken,
+                startNanos);
+    }
+
+    /**
+     * Generates the token for the host at the given index, waiting no longer than the rest of the
+     * login timeout if there is one. A token generation that times out carries on, so that its
+     * token is cached for the connects that follow.
+     *
+     * @param rejectedToken a token for the host that the database rejected, or null
+     * @throws SQLTransientException if the token was not generated within the login timeout, or
+     *     there was no thread to generate it on, in which case the connect must fail rather than
+     *     continue without a token
+     */
+    private String generateRdsIamAuthToken(
+            PreparedConnect prepared, int index, String rejectedToken, long startNanos)
+            throws Exception {
+        RdsIamAuthTokenRequest request = prepared.getTokenRequest(index);
+        if (remainingLoginTimeoutNanos(prepared, startNanos) == Long.MAX_VALUE) {
+            return generateRdsIamAuthToken(request, rejectedToken);
+        }
+        CompletableFuture<String> token;
+        try {
+            token =
+                    CompletableFuture.supplyAsync(
+                            () -> generateRdsIamAuthToken(request, rejectedToken),
+                            tokenExecutor());
+        } catch (RejectedExecutionException e) {
+            throw new SQLTransientConnectionException(
+                    "RDS IAM auth token generation rejected, every token generation thread is"
+                            + " busy",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                    e);
+        }
+        return awaitToken(token, prepared, startNanos);
+    }
+
+    /**
+     * The executor tokens are generated on when connects must not wait beyond a login timeout,
+     * which has a bounded number of threads, shared by every wrapper instance.
+     */
+    Executor tokenExecutor() {
+        return ConnectExecutors.tokenExecutor();
+    }
+
+    /** The time that login timeouts are measured by, as given by {@link System#nanoTime()}. */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Starts generating the token for the host at the given index on the token executor, returning
+     * null if every one of its threads is busy, leaving the caller to generate the token itself.
+     * The future completes exceptionally if the token request could not be created.
+     */
+    private CompletableFuture<String> generateRdsIamAuthTokenAsync(
+            PreparedConnect prepared, int index) {
+        RdsIamAuthTokenRequest request;
+        try {
+            request = prepared.getTokenRequest(index);
+        } catch (Exception e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> generateRdsIamAuthToken(request), tokenExecutor());
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Waits for a token generation for no longer than the rest of the login timeout.
+     *
+     * @throws SQLTimeoutException if the token was not generated within the login timeout
+     * @throws Exception the failure to generate the token
+     */
+    private String awaitToken(
+            CompletableFuture<String> token, PreparedConnect prepared, long startNanos)
+            throws Exception {
+        long remainingNanos = remainingLoginTimeoutNanos(prepared, startNanos);
+        try {
+            return remainingNanos == Long.MAX_VALUE
+                    ? token.get()
+                    : token.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            METRICS.tokenGenerationTimedOut();
+            throw new SQLTimeoutException(
+                    "RDS IAM auth token generation did not complete within the login timeout",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                    e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(
+                    "Interrupted while waiting for RDS IAM auth token generation",
+                    CONNECTION_NOT_ESTABLISHED_SQL_STATE,
+                    e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Throws an exception for the hosts that could not be connected to, with the first failure as
+     * its cause, and every failure chained as next exceptions. Returns null if no host failed,
+     * only declined the URL.
+     */
+    private static Connection failedEndpoints(
+            List<JdbcUrlDescriptor.Endpoint> endpoints, SQLException[] failures)
+            throws SQLException {
+        SQLException failure = null;
+        boolean timedOut = true;
+        for (SQLException endpointFailure : failures) {
+            timedOut &= endpointFailure == null || endpointFailure instanceof SQLTimeoutException;
+        }
+        for (SQLException endpointFailure : failures) {
+            if (endpointFailure == null) {
+                continue;
+            }
+            if (failure == null) {
+                String reason = "Unable to connect to any of the hosts: " + endpoints;
+                // Every host running out of login timeout is still a login timeout
+                failure =
+                        timedOut
+                                ? new SQLTimeoutException(
+                                        reason, endpointFailure.getSQLState(), endpointFailure)
+                                : new SQLException(
+                                        reason, endpointFailure.getSQLState(), endpointFailure);
+            }
+            failure.setNextException(endpointFailure);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    private static boolean raceMultiHost(Map<String, String> properties) throws SQLException {
+        String mode = properties.get(IAM_AUTH_MULTI_HOST_MODE_PROPERTY);
+        if (mode == null || SEQUENTIAL_MULTI_HOST_MODE.equalsIgnoreCase(mode.trim())) {
+            return false;
+        } else if (RACE_MULTI_HOST_MODE.equalsIgnoreCase(mode.trim())) {
+            return true;
+        }
+        throw new SQLException(
+                "Invalid value for property " + IAM_AUTH_MULTI_HOST_MODE_PROPERTY + ": " + mode);
+    }
+
+    private String delegateSchemeName(Map<String, String> properties) {
+        if (delegateSchemeName != null) {
+            return delegateSchemeName;
         }
+        return properties.get(DELEGATE_DRIVER_SCHEME_NAME_PROPERTY);
+    }
+
+    private Driver attemptResolveDelegateDriver(Map<String, String> properties) {
+        try {
+            return resolveDelegateDriver(properties);
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Attempt to resolve delegate driver failed", e);
+            return null;
+        }
+    }
 
+    private Driver resolveDelegateDriver(Map<String, String> properties) throws SQLException {
         String driverToResolve =
                 properties.getOrDefault(DELEGATE_DRIVER_CLASS_PROPERTY, driverClassName);
-        if (driverToResolve == null) {
+        Driver delegate = DELEGATE_DRIVERS.resolve(driverToResolve, delegateSchemeName(properties));
+        if (delegate == null) {
             throw new SQLException("No delegate JDBC driver configured");
         }
+        return delegate;
+    }
+
+    /**
+     * The delegate driver this wrapper is pre-configured with, if any, used to answer driver
+     * metadata queries.
+     */
+    private Driver defaultDelegate() {
+        if (driverClassName == null && delegateSchemeName == null) {
+            return null;
+        }
         try {
-            delegate = resolveDriver(driverToResolve);
-        } catch (Exception e) {
-            throw new SQLException("Unable to load delegate JDBC driver", e);
+            return DELEGATE_DRIVERS.resolve(driverClassName, delegateSchemeName);
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Attempt to resolve delegate driver failed", e);
+            return null;
         }
     }
 
-    private String host(URI uri) throws SQLException {
-        if (uri.getHost() != null) {
-            return uri.getHost();
+    private static String host(String host) throws SQLException {
+        if (host != null) {
+            return host;
         } else {
             throw new SQLException(
                     "No database host specified. IAM Auth requires that a host be specified in the JDBC URL.");
         }
     }
 
-    private int port(URI uri) throws SQLException {
-        if (uri.getPort() != -1) {
-            return uri.getPort();
+    /** @param port the port specified in the URL, or -1 if none was specified */
+    private int port(int port) throws SQLException {
+        if (port != -1) {
+            return port;
         } else if (defaultPort != null) {
             return defaultPort;
         } else {
@@ -357,89 +1361,257 @@ public class IamAuthJdbcDriverWrapper implements Driver {
     }
 
     public String generateRdsIamAuthToken(String host, int port, Map<String, String> properties) {
+        return generateRdsIamAuthToken(
+                RdsIamAuthTokenRequest.from(host, port, properties.get(userProperty), properties));
+    }
+
+    /**
+     * Generates the token for the host on the executor that connects with a login timeout generate
+     * tokens on, which has a bounded number of threads. The future completes exceptionally with a
+     * {@link RejectedExecutionException} if every one of them is busy.
+     *
+     * @see #generateRdsIamAuthTokenAsync(String, int, Map, Executor)
+     */
+    public CompletableFuture<String> generateRdsIamAuthTokenAsync(
+            String host, int port, Map<String, String> properties) {
+        try {
+            return generateRdsIamAuthTokenAsync(
+                    host, port, properties, tokenExecutor());
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<String> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    /**
+     * Generates the token for the host on the given executor, so that callers which must not
+     * block, such as reactive drivers running on an event loop, never wait on credential or STS
+     * requests themselves. Tokens are cached and shared with the synchronous connects.
+     *
+     * <p>The future completes exceptionally with an {@link IllegalArgumentException} if any of the
+     * wrapper's properties have invalid values, or with the failure to generate the token.
+     */
+    public CompletableFuture<String> generateRdsIamAuthTokenAsync(
+            String host, int port, Map<String, String> properties, Executor executor) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    METRICS.ensureRegistered();
+                    return generateRdsIamAuthToken(host, port, properties);
+                },
+                executor);
+    }
+
+    /**
+     * Generates the token for the host and user on the given executor, without a wrapper instance,
+     * for callers outside of JDBC such as R2DBC connection factories. Tokens are cached, and shared
+     * with the wrappers' connects.
+     *
+     * <p>The future completes exceptionally with an {@link IllegalArgumentException} if any of the
+     * wrapper's properties have invalid values, with a {@link RejectedExecutionException} if the
+     * executor rejects the generation, or with the failure to generate the token.
+     *
+     * @param executor the executor to generate the token on, or null to use the executor that
+     *     connects with a login timeout generate tokens on, which has a bounded number of threads
+     */
+    public static CompletableFuture<String> generateRdsIamAuthTokenAsync(
+            String host,
+            int port,
+            String user,
+            Map<String, String> properties,
+            Executor executor) {
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> {
+                        METRICS.ensureRegistered();
+                        return generateRdsIamAuthToken(
+                                RdsIamAuthTokenRequest.from(host, port, user, properties),
+                                null,
+                                SharedTokenRefresherHolder::get);
+                    },
+                    executor == null ? ConnectExecutors.tokenExecutor() : executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<String> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    private String generateRdsIamAuthToken(RdsIamAuthTokenRequest request) {
+        return generateRdsIamAuthToken(request, null);
+    }
 
-        String usernameProperty = properties.get(userProperty);
-        String regionProperty = properties.get(AWS_REGION_PROPERTY);
-        String awsProfile = properties.get(AWS_PROFILE_PROPERTY);
+    private String generateRdsIamAuthToken(
+            RdsIamAuthTokenRequest request, String rejectedToken) {
+        return generateRdsIamAuthToken(request, rejectedToken, this::tokenRefresher);
+    }
 
-        String region = resolveRegion(regionProperty, awsProfile);
+    /**
+     * @param rejectedToken a token for the request that the database rejected, to be replaced
+     *     rather than returned from the cache, along with the credentials it was signed with, or
+     *     null
+     * @param tokenRefresher the refresher to register the token with, if it is to be refreshed
+     *     ahead
+     */
+    private static String generateRdsIamAuthToken(
+            RdsIamAuthTokenRequest request,
+            String rejectedToken,
+            Supplier<RdsIamAuthTokenRefresher> tokenRefresher) {
+        String host = request.getHost();
+        int port = request.getPort();
+        String region = resolveRegion(host, request.getRegionProperty(), request.getAwsProfile());
 
-        final RdsIamAuthTokenGenerator generator =
-                RdsIamAuthTokenGenerator.builder()
-                        .credentials(resolveCredentialProvider(properties))
-                        .region(region)
-                        .build();
+        CredentialProviderKey credentialProviderKey = request.getCredentialProviderKey();
+        Supplier<String> generator =
+                () ->
+                        CIRCUIT_BREAKER.execute(
+                                credentialProviderKey,
+                                request.getInitialBackoffMillis(),
+                                request.getMaxBackoffMillis(),
+                                () ->
+                                        tokenGenerator()
+                                                .signRdsIamAuthToken(
+                                                        host,
+                                                        port,
+                                                        request.getUser(),
+                                                        region,
+                                                        credentialProviderKey,
+                                                        request.isBuiltinSigner()));
 
-        LOGGER.fine(
-                "Generating RDS IAM auth token for: Host="
-                        + host
-                        + ", Port="
-                        + port
-                        + ", Username="
-                        + usernameProperty);
-        return generator.getAuthToken(new GetIamAuthTokenRequest(host, port, usernameProperty));
+        if (rejectedToken != null) {
+            tokenGenerator().refreshRejectedCredentials(credentialProviderKey, rejectedToken);
+        }
+        if (!request.isCacheEnabled()) {
+            return generator.get();
+        }
+
+        RdsIamAuthTokenKey key =
+                new RdsIamAuthTokenKey(
+                        host, port, request.getUser(), region, credentialProviderKey);
+        if (rejectedToken != null) {
+            // Concurrent connects rejected with the same token share the first one's replacement
+            TOKEN_CACHE.invalidate(key, rejectedToken);
+        }
+        if (request.isRefreshAheadEnabled()) {
+            tokenRefresher
+                    .get()
+                    .register(
+                            key,
+                            request.getReuseMillis(),
+                            request.getRefreshIdleTimeoutMillis(),
+                            generator);
+        }
+        return TOKEN_CACHE.getOrGenerate(key, request.getReuseMillis(), generator);
+    }
+
+    static boolean booleanProperty(
+            Map<String, String> properties, String name, boolean defaultValue) {
+        String value = properties.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    static long longProperty(
+            Map<String, String> properties, String name, long defaultValue) {
+        String value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Invalid value for property " + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * The number of RDS IAM auth token requests that were served by waiting for a concurrent
+     * request for the same token, rather than generating a token themselves.
+     */
+    public static long getCoalescedTokenRequestCount() {
+        return TOKEN_GENERATIONS.getCoalescedCount();
+    }
+
+    /**
+     * The number of AWS credential requests that were served by waiting for a concurrent request
+     * for the same credentials, rather than resolving the credentials themselves.
+     */
+    public static long getCoalescedCredentialRequestCount() {
+        return CREDENTIAL_REQUESTS.getCoalescedCount();
+    }
+
+    /**
+     * Registers a delegate driver for every wrapper instance in the JVM, to be used wherever its
+     * class name, or the given JDBC URL scheme, is configured as the delegate. This avoids loading
+     * the delegate reflectively, for example in a GraalVM native image where the delegate is not
+     * registered with {@link DriverManager}.
+     *
+     * @param schemeName the delegate's JDBC URL scheme, such as {@code postgresql}, or null
+     */
+    public static void registerDelegateDriver(String schemeName, Driver driver) {
+        DELEGATE_DRIVERS.register(schemeName, Objects.requireNonNull(driver));
+    }
+
+    /**
+     * Sets the maximum number of RDS IAM auth tokens to cache, across every wrapper instance in
+     * the JVM, the oldest tokens are evicted first. Defaults to 1000
+     */
+    public static void setTokenCacheMaxSize(int maxSize) {
+        TOKEN_CACHE.setMaxSize(maxSize);
+    }
+
+    /** Metrics covering every wrapper instance in the JVM. */
+    public static IamAuthMetricsMXBean getMetrics() {
+        return METRICS;
+    }
+
+    /** Registers a listener to receive metrics events from every wrapper instance in the JVM. */
+    public static void addMetricsListener(IamAuthMetricsListener listener) {
+        METRICS.addListener(Objects.requireNonNull(listener));
+    }
+
+    public static void removeMetricsListener(IamAuthMetricsListener listener) {
+        METRICS.removeListener(listener);
     }
 
-    private String resolveRegion(String regionProperty, String awsProfileProperty) {
+    private static String resolveRegion(
+            String host, String regionProperty, String awsProfileProperty) {
         if (regionProperty != null) {
             return regionProperty;
-        } else {
-            if (awsProfileProperty != null) {
-                AwsProfileRegionProvider awsProfileRegionProvider =
-                        new AwsProfileRegionProvider(awsProfileProperty);
-                if (awsProfileRegionProvider.getRegion() != null) {
-                    return awsProfileRegionProvider.getRegion();
-                }
-            }
         }
-        return defaultAwsRegionProviderChain.getRegion();
+        return tokenGenerator().resolveRegion(host, awsProfileProperty);
     }
 
-    private AWSCredentialsProvider resolveCredentialProvider(Map<String, String> properties) {
-        String awsProfile = properties.get(AWS_PROFILE_PROPERTY);
-        String awsAccessKey = properties.get(AWS_ACCESS_KEY_ID_PROPERTY);
-        String awsSecretKey = properties.get(AWS_SECRET_ACCESS_KEY_PROPERTY);
+    AWSCredentialsProvider resolveCredentialProvider(Map<String, String> properties) {
+        return tokenGenerator().resolveCredentialProvider(CredentialProviderKey.from(properties));
+    }
 
-        final AWSCredentialsProvider baseCredentialProvider;
-        if (awsAccessKey != null && awsSecretKey != null) {
-            baseCredentialProvider =
-                    new AWSStaticCredentialsProvider(
-                            new BasicAWSCredentials(awsAccessKey, awsSecretKey));
-        } else if (awsProfile != null) {
-            baseCredentialProvider = new ProfileCredentialsProvider(awsProfile);
-        } else {
-            baseCredentialProvider = defaultAWSCredentialsProviderChain;
-        }
-
-        String assumedRole = properties.get(AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY);
-        String externalId = properties.get(AWS_STS_CREDENTIAL_EXTERNAL_ID_PROPERTY);
-        String roleSessionNameProperty = properties.get(AWS_STS_CREDENTIAL_SESSION_NAME_PROPERTY);
-
-        if (assumedRole != null) {
-            String roleSessionName =
-                    roleSessionNameProperty == null
-                            ? "IAM_RDS_JDBC_DRIVER_WRAPPER" + UUID.randomUUID().toString()
-                            : roleSessionNameProperty;
-            RoleInfo roleInfo =
-                    new RoleInfo()
-                            .withRoleArn(assumedRole)
-                            .withLongLivedCredentialsProvider(baseCredentialProvider)
-                            .withExternalId(externalId)
-                            .withRoleSessionName(roleSessionName);
-            LOGGER.fine(
-                    () ->
-                            "Assuming role with ARN: "
-                                    + assumedRole
-                                    + ", and Session Name: "
-                                    + roleSessionName);
-            return new STSProfileCredentialsServiceProvider(roleInfo);
-        } else {
-            return baseCredentialProvider;
+    /** The shared AWS side of token generation, created on the first IAM connect. */
+    private static IamAuthTokenGenerator tokenGenerator() {
+        return TokenGeneratorHolder.TOKEN_GENERATOR;
+    }
+
+    private static final class TokenGeneratorHolder {
+        private static final IamAuthTokenGenerator TOKEN_GENERATOR =
+                new IamAuthTokenGenerator(CREDENTIAL_REQUESTS, METRICS);
+    }
+
+    /**
+     * Refreshes ahead the tokens generated without a wrapper instance, which live as long as the
+     * JVM, as no wrapper's deregistration stops them.
+     */
+    private static final class SharedTokenRefresherHolder {
+        private static final RdsIamAuthTokenRefresher TOKEN_REFRESHER =
+                new RdsIamAuthTokenRefresher(TOKEN_CACHE);
+
+        static RdsIamAuthTokenRefresher get() {
+            return TOKEN_REFRESHER;
         }
     }
 
     @Override
     public int getMajorVersion() {
+        Driver delegate = defaultDelegate();
         if (delegate == null) {
             logDelegateNotInitialised("getMajorValue");
             return -1;
@@ -449,6 +1621,7 @@ public class IamAuthJdbcDriverWrapper implements Driver {
 
     @Override
     public int getMinorVersion() {
+        Driver delegate = defaultDelegate();
         if (delegate == null) {
             logDelegateNotInitialised("getMinorVersion");
             return -1;
@@ -458,6 +1631,7 @@ public class IamAuthJdbcDriverWrapper implements Driver {
 
     @Override
     public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        Driver delegate = defaultDelegate();
         if (delegate == null) {
             logDelegateNotInitialised("getParentLogger");
             throw new SQLFeatureNotSupportedException("Delegate driver not initialised");
@@ -469,12 +1643,17 @@ public class IamAuthJdbcDriverWrapper implements Driver {
     public DriverPropertyInfo[] getPropertyInfo(String url, Properties properties)
             throws SQLException {
         assertUrlNotNull(url);
-        attemptResolveDelegateDriverDetails(parseJdbcUrl(url));
+        Properties connectionProperties = properties == null ? new Properties() : properties;
+        Driver delegate =
+                resolveDelegateDriver(
+                        mergeProperties(
+                                connectionProperties, describe(url).getQueryProperties()));
         return delegate.getPropertyInfo(url, properties);
     }
 
     @Override
     public boolean jdbcCompliant() {
+        Driver delegate = defaultDelegate();
         if (delegate == null) {
             logDelegateNotInitialised("jdbcCompliant");
             return false;
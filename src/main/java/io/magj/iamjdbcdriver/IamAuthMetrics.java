@@ -0,0 +1,390 @@
+package io.magj.iamjdbcdriver;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records metrics for the connect path, and forwards them to any registered {@link
+ * IamAuthMetricsListener}s.
+ *
+ * <p>Recording does not allocate: counters are {@link LongAdder}s, latencies are kept in {@link
+ * LatencyHistogram}s, and listeners are held in an array that is replaced, rather than iterated
+ * through a collection, when listeners are added or removed. Each event is a constant that calls
+ * one listener method, passed along with its value to a single dispatch loop.
+ */
+final class IamAuthMetrics implements IamAuthMetricsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(IamAuthMetrics.class.getName());
+
+    private static final IamAuthMetricsListener[] NO_LISTENERS = new IamAuthMetricsListener[0];
+
+    private static final ObjLongConsumer<IamAuthMetricsListener> CREDENTIALS_RESOLVED =
+            IamAuthMetricsListener::credentialsResolved;
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_SIGNED =
+            IamAuthMetricsListener::tokenSigned;
+    private static final ObjLongConsumer<IamAuthMetricsListener> DELEGATE_CONNECTED =
+            (listener, durationNanos) -> listener.delegateConnected(durationNanos, true);
+    private static final ObjLongConsumer<IamAuthMetricsListener> DELEGATE_CONNECT_FAILED =
+            (listener, durationNanos) -> listener.delegateConnected(durationNanos, false);
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_CACHE_HIT =
+            (listener, unused) -> listener.tokenCacheHit();
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_CACHE_MISS =
+            (listener, unused) -> listener.tokenCacheMiss();
+    private static final ObjLongConsumer<IamAuthMetricsListener> STS_CREDENTIALS_FETCHED =
+            (listener, unused) -> listener.stsCredentialsFetched();
+    private static final ObjLongConsumer<IamAuthMetricsListener> DEFAULT_PROVIDER_CHAIN_RESOLVED =
+            (listener, unused) -> listener.defaultProviderChainResolved();
+    private static final ObjLongConsumer<IamAuthMetricsListener> CONNECTED_WITHOUT_TOKEN =
+            (listener, unused) -> listener.connectedWithoutToken();
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_GENERATION_FAILED =
+            (listener, unused) -> listener.tokenGenerationFailed();
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_GENERATION_REJECTED =
+            (listener, unused) -> listener.tokenGenerationRejected();
+    private static final ObjLongConsumer<IamAuthMetricsListener> REJECTED_TOKEN_RETRIED =
+            (listener, unused) -> listener.rejectedTokenRetried();
+    private static final ObjLongConsumer<IamAuthMetricsListener> CONNECT_RATE_LIMIT_WAITED =
+            IamAuthMetricsListener::connectRateLimitWaited;
+    private static final ObjLongConsumer<IamAuthMetricsListener> CONNECT_RATE_LIMIT_REJECTED =
+            (listener, unused) -> listener.connectRateLimitRejected();
+    private static final ObjLongConsumer<IamAuthMetricsListener> TOKEN_GENERATION_TIMED_OUT =
+            (listener, unused) -> listener.tokenGenerationTimedOut();
+
+    private final SingleFlight<?, ?> tokenGenerations;
+    private final SingleFlight<?, ?> credentialRequests;
+
+    private final LatencyHistogram credentialResolution = new LatencyHistogram();
+    private final LatencyHistogram tokenSigning = new LatencyHistogram();
+    private final LatencyHistogram delegateConnect = new LatencyHistogram();
+    private final LongAdder delegateConnectFailures = new LongAdder();
+    private final LongAdder tokenCacheHits = new LongAdder();
+    private final LongAdder tokenCacheMisses = new LongAdder();
+    private final LongAdder stsCredentialFetches = new LongAdder();
+    private final LongAdder defaultProviderChainResolutions = new LongAdder();
+    private final LongAdder connectsWithoutToken = new LongAdder();
+    private final LongAdder tokenGenerationFailures = new LongAdder();
+    private final LongAdder tokenGenerationsRejected = new LongAdder();
+    private final LongAdder rejectedTokenRetries = new LongAdder();
+    private final LatencyHistogram connectRateLimitWait = new LatencyHistogram();
+    private final LongAdder connectRateLimitRejections = new LongAdder();
+    private final LongAdder tokenGenerationTimeouts = new LongAdder();
+
+    private volatile IamAuthMetricsListener[] listeners = NO_LISTENERS;
+    private volatile boolean registered;
+
+    IamAuthMetrics(SingleFlight<?, ?> tokenGenerations, SingleFlight<?, ?> credentialRequests) {
+        this.tokenGenerations = tokenGenerations;
+        this.credentialRequests = credentialRequests;
+    }
+
+    /** Registers this instance with the platform MBean server, if not already registered. */
+    void ensureRegistered() {
+        if (registered) {
+            return;
+        }
+        synchronized (this) {
+            if (registered) {
+                return;
+            }
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(this, name);
+                }
+            } catch (JMException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Unable to register IAM auth metrics MBean", e);
+            }
+        }
+    }
+
+    synchronized void addListener(IamAuthMetricsListener listener) {
+        IamAuthMetricsListener[] current = listeners;
+        IamAuthMetricsListener[] updated = new IamAuthMetricsListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    synchronized void removeListener(IamAuthMetricsListener listener) {
+        IamAuthMetricsListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                IamAuthMetricsListener[] updated = new IamAuthMetricsListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    void credentialsResolved(long durationNanos) {
+        credentialResolution.record(durationNanos);
+        dispatch(CREDENTIALS_RESOLVED, durationNanos);
+    }
+
+    void tokenSigned(long durationNanos) {
+        tokenSigning.record(durationNanos);
+        dispatch(TOKEN_SIGNED, durationNanos);
+    }
+
+    void delegateConnected(long durationNanos, boolean successful) {
+        delegateConnect.record(durationNanos);
+        if (successful) {
+            dispatch(DELEGATE_CONNECTED, durationNanos);
+        } else {
+            delegateConnectFailures.increment();
+            dispatch(DELEGATE_CONNECT_FAILED, durationNanos);
+        }
+    }
+
+    void tokenCacheHit() {
+        tokenCacheHits.increment();
+        dispatch(TOKEN_CACHE_HIT, 0);
+    }
+
+    void tokenCacheMiss() {
+        tokenCacheMisses.increment();
+        dispatch(TOKEN_CACHE_MISS, 0);
+    }
+
+    void stsCredentialsFetched() {
+        stsCredentialFetches.increment();
+        dispatch(STS_CREDENTIALS_FETCHED, 0);
+    }
+
+    void defaultProviderChainResolved() {
+        defaultProviderChainResolutions.increment();
+        dispatch(DEFAULT_PROVIDER_CHAIN_RESOLVED, 0);
+    }
+
+    void connectedWithoutToken() {
+        connectsWithoutToken.increment();
+        dispatch(CONNECTED_WITHOUT_TOKEN, 0);
+    }
+
+    void tokenGenerationFailed() {
+        tokenGenerationFailures.increment();
+        dispatch(TOKEN_GENERATION_FAILED, 0);
+    }
+
+    void tokenGenerationRejected() {
+        tokenGenerationsRejected.increment();
+        dispatch(TOKEN_GENERATION_REJECTED, 0);
+    }
+
+    void rejectedTokenRetried() {
+        rejectedTokenRetries.increment();
+        dispatch(REJECTED_TOKEN_RETRIED, 0);
+    }
+
+    void connectRateLimitWaited(long durationNanos) {
+        connectRateLimitWait.record(durationNanos);
+        dispatch(CONNECT_RATE_LIMIT_WAITED, durationNanos);
+    }
+
+    void connectRateLimitRejected() {
+        connectRateLimitRejections.increment();
+        dispatch(CONNECT_RATE_LIMIT_REJECTED, 0);
+    }
+
+    void tokenGenerationTimedOut() {
+        tokenGenerationTimeouts.increment();
+        dispatch(TOKEN_GENERATION_TIMED_OUT, 0);
+    }
+
+    /**
+     * Calls every listener with the event. Events are constants that capture nothing, and the
+     * value is passed as a primitive, so dispatching allocates nothing, and returns straight away
+     * when there are no listeners. A listener that throws doesn't prevent the rest being called.
+     */
+    private void dispatch(ObjLongConsumer<IamAuthMetricsListener> event, long value) {
+        IamAuthMetricsListener[] current = listeners;
+        if (current.length == 0) {
+            return;
+        }
+        for (IamAuthMetricsListener listener : current) {
+            try {
+                event.accept(listener, value);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "IAM auth metrics listener failed", e);
+            }
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public long getCredentialResolutionCount() {
+        return credentialResolution.getCount();
+    }
+
+    @Override
+    public long getCredentialResolutionMeanMicros() {
+        return micros(credentialResolution.getMeanNanos());
+    }
+
+    @Override
+    public long getCredentialResolutionP99Micros() {
+        return micros(credentialResolution.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getCredentialResolutionMaxMicros() {
+        return micros(credentialResolution.getMaxNanos());
+    }
+
+    @Override
+    public long getTokenSigningCount() {
+        return tokenSigning.getCount();
+    }
+
+    @Override
+    public long getTokenSigningMeanMicros() {
+        return micros(tokenSigning.getMeanNanos());
+    }
+
+    @Override
+    public long getTokenSigningP99Micros() {
+        return micros(tokenSigning.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getTokenSigningMaxMicros() {
+        return micros(tokenSigning.getMaxNanos());
+    }
+
+    @Override
+    public long getDelegateConnectCount() {
+        return delegateConnect.getCount();
+    }
+
+    @Override
+    public long getDelegateConnectMeanMicros() {
+        return micros(delegateConnect.getMeanNanos());
+    }
+
+    @Override
+    public long getDelegateConnectP99Micros() {
+        return micros(delegateConnect.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getDelegateConnectMaxMicros() {
+        return micros(delegateConnect.getMaxNanos());
+    }
+
+    @Override
+    public long getDelegateConnectFailures() {
+        return delegateConnectFailures.sum();
+    }
+
+    @Override
+    public long getTokenCacheHits() {
+        return tokenCacheHits.sum();
+    }
+
+    @Override
+    public long getTokenCacheMisses() {
+        return tokenCacheMisses.sum();
+    }
+
+    @Override
+    public long getCoalescedTokenRequests() {
+        return tokenGenerations.getCoalescedCount();
+    }
+
+    @Override
+    public long getCoalescedCredentialRequests() {
+        return credentialRequests.getCoalescedCount();
+    }
+
+    @Override
+    public long getStsCredentialFetches() {
+        return stsCredentialFetches.sum();
+    }
+
+    @Override
+    public long getDefaultProviderChainResolutions() {
+        return defaultProviderChainResolutions.sum();
+    }
+
+    @Override
+    public long getConnectsWithoutToken() {
+        return connectsWithoutToken.sum();
+    }
+
+    @Override
+    public long getTokenGenerationFailures() {
+        return tokenGenerationFailures.sum();
+    }
+
+    @Override
+    public long getTokenGenerationsRejected() {
+        return tokenGenerationsRejected.sum();
+    }
+
+    @Override
+    public long getRejectedTokenRetries() {
+        return rejectedTokenRetries.sum();
+    }
+
+    @Override
+    public long getConnectRateLimitWaitCount() {
+        return connectRateLimitWait.getCount();
+    }
+
+    @Override
+    public long getConnectRateLimitWaitMeanMicros() {
+        return micros(connectRateLimitWait.getMeanNanos());
+    }
+
+    @Override
+    public long getConnectRateLimitWaitP99Micros() {
+        return micros(connectRateLimitWait.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getConnectRateLimitWaitMaxMicros() {
+        return micros(connectRateLimitWait.getMaxNanos());
+    }
+
+    @Override
+    public long getConnectRateLimitRejections() {
+        return connectRateLimitRejections.sum();
+    }
+
+    @Override
+    public long getTokenGenerationTimeouts() {
+        return tokenGenerationTimeouts.sum();
+    }
+
+    @Override
+    public void reset() {
+        credentialResolution.reset();
+        tokenSigning.reset();
+        delegateConnect.reset();
+        delegateConnectFailures.reset();
+        tokenCacheHits.reset();
+        tokenCacheMisses.reset();
+        stsCredentialFetches.reset();
+        defaultProviderChainResolutions.reset();
+        connectsWithoutToken.reset();
+        tokenGenerationFailures.reset();
+        tokenGenerationsRejected.reset();
+        rejectedTokenRetries.reset();
+        connectRateLimitWait.reset();
+        connectRateLimitRejections.reset();
+        tokenGenerationTimeouts.reset();
+    }
+}
@@ -0,0 +1,73 @@
+package io.magj.iamjdbcdriver;
+
+/**
+ * Receives events from the connect path of every {@link IamAuthJdbcDriverWrapper}, for forwarding
+ * to an application's own metrics library.
+ *
+ * <p>Listeners are called synchronously on the connecting thread, so implementations should be
+ * fast and non-blocking. All methods have empty default implementations.
+ *
+ * @see IamAuthJdbcDriverWrapper#addMetricsListener(IamAuthMetricsListener)
+ */
+public interface IamAuthMetricsListener {
+
+    /** AWS credentials were resolved prior to signing a token. */
+    default void credentialsResolved(long durationNanos) {}
+
+    /** An RDS IAM auth token was signed. */
+    default void tokenSigned(long durationNanos) {}
+
+    /** The delegate driver's connect returned or threw. */
+    default void delegateConnected(long durationNanos, boolean successful) {}
+
+    /** A connect was served a cached RDS IAM auth token. */
+    default void tokenCacheHit() {}
+
+    /** A connect found no usable cached RDS IAM auth token. */
+    default void tokenCacheMiss() {}
+
+    /** New assumed role credentials were obtained from STS. */
+    default void stsCredentialsFetched() {}
+
+    /**
+     * The default AWS provider chains returned new credentials, or were asked for a region. The
+     * requests the chains make to instance or container metadata are not measured, as they may
+     * instead be served from the environment, a profile, or credentials the chains cached.
+     */
+    default void defaultProviderChainResolved() {}
+
+    /**
+     * Token generation failed, and the delegate driver was called without an RDS IAM auth token.
+     */
+    default void connectedWithoutToken() {}
+
+    /** Token generation, including resolving credentials and region, failed. */
+    default void tokenGenerationFailed() {}
+
+    /**
+     * Token generation was not attempted, as generation with the same credentials failed recently
+     * and is backing off.
+     */
+    default void tokenGenerationRejected() {}
+
+    /**
+     * The database rejected an RDS IAM auth token, and the connect is being retried with a newly
+     * generated token.
+     */
+    default void rejectedTokenRetried() {}
+
+    /** A connect was allowed by the connect rate limit, after waiting for the given time. */
+    default void connectRateLimitWaited(long durationNanos) {}
+
+    /**
+     * A connect failed, as the connect rate limit would not have allowed it before the login
+     * timeout.
+     */
+    default void connectRateLimitRejected() {}
+
+    /**
+     * A connect failed, as credential resolution and token generation did not complete within the
+     * login timeout.
+     */
+    default void tokenGenerationTimedOut() {}
+}
@@ -0,0 +1,84 @@
+package io.magj.iamjdbcdriver;
+
+/**
+ * Metrics covering all {@link IamAuthJdbcDriverWrapper} instances in the JVM, registered with the
+ * platform MBean server as {@value #OBJECT_NAME} on the first connect.
+ *
+ * <p>Latencies are reported in microseconds, percentiles are accurate to within a factor of two.
+ */
+public interface IamAuthMetricsMXBean {
+
+    String OBJECT_NAME = "io.magj.iamjdbcdriver:type=IamAuthMetrics";
+
+    long getCredentialResolutionCount();
+
+    long getCredentialResolutionMeanMicros();
+
+    long getCredentialResolutionP99Micros();
+
+    long getCredentialResolutionMaxMicros();
+
+    long getTokenSigningCount();
+
+    long getTokenSigningMeanMicros();
+
+    long getTokenSigningP99Micros();
+
+    long getTokenSigningMaxMicros();
+
+    long getDelegateConnectCount();
+
+    long getDelegateConnectMeanMicros();
+
+    long getDelegateConnectP99Micros();
+
+    long getDelegateConnectMaxMicros();
+
+    long getDelegateConnectFailures();
+
+    long getTokenCacheHits();
+
+    long getTokenCacheMisses();
+
+    long getCoalescedTokenRequests();
+
+    long getCoalescedCredentialRequests();
+
+    /** New assumed role credentials obtained from STS. */
+    long getStsCredentialFetches();
+
+    /**
+     * New credentials returned, or regions looked up, by the default AWS provider chains. This
+     * does not count requests to instance or container metadata.
+     */
+    long getDefaultProviderChainResolutions();
+
+    /** Connects that called the delegate driver without a token after token generation failed. */
+    long getConnectsWithoutToken();
+
+    long getTokenGenerationFailures();
+
+    /** Token generations not attempted while backing off after failures. */
+    long getTokenGenerationsRejected();
+
+    /** Connects retried with a new token after the database rejected the first. */
+    long getRejectedTokenRetries();
+
+    /** Connects that waited, or found no need to wait, for the connect rate limit. */
+    long getConnectRateLimitWaitCount();
+
+    long getConnectRateLimitWaitMeanMicros();
+
+    long getConnectRateLimitWaitP99Micros();
+
+    long getConnectRateLimitWaitMaxMicros();
+
+    /** Connects that failed as the connect rate limit would not allow them within the timeout. */
+    long getConnectRateLimitRejections();
+
+    /** Connects that failed as the token was not generated within the login timeout. */
+    long getTokenGenerationTimeouts();
+
+    /** Resets all latencies and counters, other than the coalesced request counts. */
+    void reset();
+}
@@ -0,0 +1,162 @@
+package io.magj.iamjdbcdriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+/**
+ * A physical connection opened by {@link IamAuthDataSource}, handing out logical connections that
+ * notify the pool when they are closed, or when the physical connection fails.
+ *
+ * <p>Statements are not pooled, so statement event listeners are accepted but never notified.
+ */
+final class IamAuthPooledConnection implements PooledConnection {
+
+    private static final Logger LOGGER = Logger.getLogger(IamAuthPooledConnection.class.getName());
+    /** The SQLState class for connection exceptions, after which the connection is unusable. */
+    private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+
+    private final Connection physicalConnection;
+    private final List<ConnectionEventListener> connectionEventListeners =
+            new CopyOnWriteArrayList<>();
+    private final List<StatementEventListener> statementEventListeners =
+            new CopyOnWriteArrayList<>();
+    private LogicalConnection logicalConnection;
+    private boolean closed;
+
+    IamAuthPooledConnection(Connection physicalConnection) {
+        this.physicalConnection = physicalConnection;
+    }
+
+    /** Returns a new logical connection, closing any that was previously returned. */
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Pooled connection is closed");
+        }
+        if (logicalConnection != null) {
+            logicalConnection.closed = true;
+        }
+        logicalConnection = new LogicalConnection();
+        return (Connection)
+                Proxy.newProxyInstance(
+                        IamAuthPooledConnection.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        logicalConnection);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (logicalConnection != null) {
+                logicalConnection.closed = true;
+            }
+        }
+        physicalConnection.close();
+    }
+
+    @Override
+    public void addConnectionEventListener(ConnectionEventListener listener) {
+        connectionEventListeners.add(listener);
+    }
+
+    @Override
+    public void removeConnectionEventListener(ConnectionEventListener listener) {
+        connectionEventListeners.remove(listener);
+    }
+
+    @Override
+    public void addStatementEventListener(StatementEventListener listener) {
+        statementEventListeners.add(listener);
+    }
+
+    @Override
+    public void removeStatementEventListener(StatementEventListener listener) {
+        statementEventListeners.remove(listener);
+    }
+
+    private void fireConnectionClosed() {
+        ConnectionEvent event = new ConnectionEvent(this);
+        for (ConnectionEventListener listener : connectionEventListeners) {
+            listener.connectionClosed(event);
+        }
+    }
+
+    private void fireConnectionErrorOccurred(SQLException e) {
+        ConnectionEvent event = new ConnectionEvent(this, e);
+        for (ConnectionEventListener listener : connectionEventListeners) {
+            listener.connectionErrorOccurred(event);
+        }
+    }
+
+    private final class LogicalConnection implements InvocationHandler {
+        private volatile boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "IamAuthPooledConnection$LogicalConnection{" + physicalConnection + "}";
+                case "isClosed":
+                    return closed || physicalConnection.isClosed();
+                case "close":
+                    if (closeLogicalConnection()) {
+                        fireConnectionClosed();
+                    }
+                    return null;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection is closed", "08003");
+            }
+            try {
+                return method.invoke(physicalConnection, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException && isConnectionError((SQLException) cause)) {
+                    LOGGER.log(Level.FINE, "Connection error on pooled connection", cause);
+                    fireConnectionErrorOccurred((SQLException) cause);
+                }
+                throw cause;
+            }
+        }
+
+        private boolean closeLogicalConnection() {
+            synchronized (IamAuthPooledConnection.this) {
+                if (closed) {
+                    return false;
+                }
+                closed = true;
+                if (logicalConnection == this) {
+                    logicalConnection = null;
+                }
+                return true;
+            }
+        }
+    }
+
+    private static boolean isConnectionError(SQLException e) {
+        String sqlState = e.getSQLState();
+        return sqlState != null && sqlState.startsWith(CONNECTION_EXCEPTION_SQL_STATE_CLASS);
+    }
+}
@@ -0,0 +1,214 @@
+package io.magj.iamjdbcdriver;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.auth.STSAssumeRoleSessionCredentialsProvider;
+import com.amazonaws.auth.profile.ProfileCredentialsProvider;
+import com.amazonaws.regions.DefaultAwsRegionProviderChain;
+import com.amazonaws.services.rds.auth.GetIamAuthTokenRequest;
+import com.amazonaws.services.rds.auth.RdsIamAuthTokenGenerator;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Everything on the connect path that uses the AWS SDK: resolving regions and credentials, and
+ * signing RDS IAM auth tokens.
+ *
+ * <p>{@link java.sql.DriverManager} loads every driver on the classpath, so this is kept apart
+ * from {@link IamAuthJdbcDriverWrapper} and only created on the first IAM connect. Loading the
+ * driver classes, or connecting through them to non IAM URLs, loads none of the AWS SDK.
+ */
+final class IamAuthTokenGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(IamAuthTokenGenerator.class.getName());
+
+    private static volatile Function<AWSCredentialsProvider, AWSSecurityTokenService>
+            stsClientFactory;
+
+    private final SingleFlight<CredentialProviderKey, AWSCredentials> credentialRequests;
+    private final IamAuthMetrics metrics;
+    private final AwsRegionResolver regionResolver;
+    private final AwsCredentialsProviderCache credentialsProviderCache =
+            new AwsCredentialsProviderCache(AwsCredentialsProviderCache.DEFAULT_MAX_SIZE);
+    private final RdsIamAuthTokenPresigner presigner = new RdsIamAuthTokenPresigner();
+
+    IamAuthTokenGenerator(
+            SingleFlight<CredentialProviderKey, AWSCredentials> credentialRequests,
+            IamAuthMetrics metrics) {
+        this.credentialRequests = credentialRequests;
+        this.metrics = metrics;
+        this.regionResolver =
+                new AwsRegionResolver(
+                        new DefaultAwsRegionProviderChain(), metrics::defaultProviderChainResolved);
+    }
+
+    /**
+     * Replaces the STS client that roles are assumed through, for tests that stand in for STS.
+     * Applies to credential providers created from then on.
+     *
+     * @param factory creates the client from the credentials to assume roles with, or null to use
+     *     the SDK's client for the global endpoint
+     */
+    static void setStsClientFactory(
+            Function<AWSCredentialsProvider, AWSSecurityTokenService> factory) {
+        stsClientFactory = factory;
+    }
+
+    /**
+     * Resolves the region of the database from its hostname, falling back to the region
+     * configured for the profile, or the default region provider chain.
+     */
+    String resolveRegion(String host, String awsProfile) {
+        return regionResolver.resolve(host, awsProfile);
+    }
+
+    /**
+     * Signs a new RDS IAM auth token, bypassing any token cache.
+     *
+     * @param builtinSigner whether to use {@link RdsIamAuthTokenPresigner} rather than the SDK's
+     *     {@link RdsIamAuthTokenGenerator}
+     */
+    String signRdsIamAuthToken(
+            String host,
+            int port,
+            String usernameProperty,
+            String region,
+            CredentialProviderKey credentialProviderKey,
+            boolean builtinSigner) {
+        long credentialsStart = System.nanoTime();
+        AWSCredentials credentials =
+                credentialsProviderCache.apply(
+                        credentialProviderKey,
+                        this::createCredentialProvider,
+                        AWSCredentialsProvider::getCredentials);
+        long signingStart = System.nanoTime();
+        metrics.credentialsResolved(signingStart - credentialsStart);
+
+        LOGGER.fine(
+                "Generating RDS IAM auth token for: Host="
+                        + host
+                        + ", Port="
+                        + port
+                        + ", Username="
+                        + usernameProperty);
+        String token;
+        if (builtinSigner) {
+            token =
+                    presigner.presign(
+                            host,
+                            port,
+                            usernameProperty,
+                            region,
+                            credentials,
+                            System.currentTimeMillis(),
+                            RdsIamAuthTokenPresigner.EXPIRES_SECONDS);
+        } else {
+            final RdsIamAuthTokenGenerator generator =
+                    RdsIamAuthTokenGenerator.builder()
+                            .credentials(new AWSStaticCredentialsProvider(credentials))
+                            .region(region)
+                            .build();
+            token =
+                    generator.getAuthToken(
+                            new GetIamAuthTokenRequest(host, port, usernameProperty));
+        }
+        metrics.tokenSigned(System.nanoTime() - signingStart);
+        return token;
+    }
+
+    /**
+     * Forces the credentials for the key to be fetched again, after the database rejected a token
+     * signed with them, for example because the role's credentials were rotated or revoked.
+     * Static credentials are left as they are.
+     */
+    void refreshRejectedCredentials(CredentialProviderKey key, String rejectedToken) {
+        credentialsProviderCache.apply(
+                key,
+                this::createCredentialProvider,
+                provider -> {
+                    if (provider instanceof CoalescingCredentialsProvider) {
+                        LOGGER.fine(
+                                () ->
+                                        "Refreshing credentials after RDS IAM auth token"
+                                                + " rejected: "
+                                                + key);
+                        ((CoalescingCredentialsProvider) provider)
+                                .refreshRejected(
+                                        RdsIamAuthTokenPresigner.accessKeyId(rejectedToken));
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * The cached provider for the key, for benchmarks. The provider is not retained for the
+     * caller, so it may be closed once it is evicted.
+     */
+    AWSCredentialsProvider resolveCredentialProvider(CredentialProviderKey key) {
+        return credentialsProviderCache.apply(
+                key, this::createCredentialProvider, provider -> provider);
+    }
+
+    // The long lived credentials provider keeps the previous behaviour of calling the global STS
+    // endpoint, without requiring a region to be resolvable for the STS client
+    @SuppressWarnings("deprecation")
+    private AWSCredentialsProvider createCredentialProvider(CredentialProviderKey key) {
+        final AWSCredentialsProvider baseCredentialProvider;
+        if (key.getAccessKeyId() != null) {
+            baseCredentialProvider =
+                    new AWSStaticCredentialsProvider(
+                            new BasicAWSCredentials(
+                                    key.getAccessKeyId(), key.getSecretAccessKey()));
+            if (key.getRoleArn() == null) {
+                // Nothing to coalesce, static credentials are resolved without any I/O
+                return baseCredentialProvider;
+            }
+        } else if (key.getProfile() != null) {
+            baseCredentialProvider = new ProfileCredentialsProvider(key.getProfile());
+        } else {
+            baseCredentialProvider = DefaultAWSCredentialsProviderChain.getInstance();
+        }
+
+        String assumedRole = key.getRoleArn();
+        if (assumedRole != null) {
+            // The session name is generated once per cached provider, so the same session is
+            // reused, and refreshed in the background, for as long as the provider is cached
+            String roleSessionName =
+                    key.getSessionName() == null
+                            ? "IAM_RDS_JDBC_DRIVER_WRAPPER" + UUID.randomUUID().toString()
+                            : key.getSessionName();
+            LOGGER.fine(
+                    () ->
+                            "Assuming role with ARN: "
+                                    + assumedRole
+                                    + ", and Session Name: "
+                                    + roleSessionName);
+            STSAssumeRoleSessionCredentialsProvider.Builder builder =
+                    new STSAssumeRoleSessionCredentialsProvider.Builder(
+                                    assumedRole, roleSessionName)
+                            .withExternalId(key.getExternalId());
+            Function<AWSCredentialsProvider, AWSSecurityTokenService> stsClients = stsClientFactory;
+            if (stsClients != null) {
+                builder.withStsClient(stsClients.apply(baseCredentialProvider));
+            } else {
+                builder.withLongLivedCredentialsProvider(baseCredentialProvider);
+            }
+            return new CoalescingCredentialsProvider(
+                    key,
+                    builder.build(),
+                    credentialRequests,
+                    metrics::stsCredentialsFetched);
+        } else {
+            return new CoalescingCredentialsProvider(
+                    key,
+                    baseCredentialProvider,
+                    credentialRequests,
+                    key.getProfile() == null ? metrics::defaultProviderChainResolved : null);
+        }
+    }
+}
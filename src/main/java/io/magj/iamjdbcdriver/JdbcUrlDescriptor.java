@@ -0,0 +1,301 @@
+package io.magj.iamjdbcdriver;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The immutable result of parsing a JDBC URL for a particular wrapper, so that repeated connects
+ * to the same URL do not need to parse it again.
+ */
+final class JdbcUrlDescriptor {
+
+    private final String url;
+    private final boolean wrapperScheme;
+    private final List<Endpoint> endpoints;
+    private final Map<String, String> queryProperties;
+    private final String connectUrl;
+
+    private JdbcUrlDescriptor(
+            String url,
+            boolean wrapperScheme,
+            List<Endpoint> endpoints,
+            Map<String, String> queryProperties,
+            String connectUrl) {
+        this.url = url;
+        this.wrapperScheme = wrapperScheme;
+        this.endpoints = endpoints;
+        this.queryProperties = queryProperties;
+        this.connectUrl = connectUrl;
+    }
+
+    /**
+     * @param wrapperPrefix the {@code jdbc:scheme:} prefix of URLs handled by the wrapper itself,
+     *     or null if the wrapper only accepts delegate URLs
+     * @param delegateSchemeName the configured delegate scheme name, may be null if it is to be
+     *     supplied as a property
+     */
+    static JdbcUrlDescriptor parse(String url, String wrapperPrefix, String delegateSchemeName) {
+        boolean wrapperScheme = wrapperPrefix != null && url.startsWith(wrapperPrefix);
+
+        URI uri = null;
+        if (url.startsWith(IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX)) {
+            try {
+                uri = URI.create(url.substring(IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX.length()));
+            } catch (IllegalArgumentException e) {
+                // Not a URL we can extract properties from, leave it to the delegate to interpret
+            }
+        }
+        Map<String, String> queryProperties =
+                Collections.unmodifiableMap(IamAuthJdbcDriverWrapper.parseQueryString(uri));
+
+        if (delegateSchemeName == null) {
+            delegateSchemeName =
+                    queryProperties.get(
+                            IamAuthJdbcDriverWrapper.DELEGATE_DRIVER_SCHEME_NAME_PROPERTY);
+        }
+        String connectUrl;
+        if (!wrapperScheme) {
+            connectUrl = url;
+        } else if (delegateSchemeName != null) {
+            connectUrl = replaceScheme(url, wrapperPrefix, delegateSchemeName);
+        } else {
+            // The delegate scheme may yet be supplied as a connection property
+            connectUrl = null;
+        }
+
+        return new JdbcUrlDescriptor(
+                url, wrapperScheme, parseEndpoints(url), queryProperties, connectUrl);
+    }
+
+    /**
+     * Parses the hosts from the authority of the URL, such as {@code host1:5432,host2:5432} in
+     * {@code jdbc:postgresql://host1:5432,host2:5432/database}. {@link URI} cannot be used, as it
+     * only allows a single host.
+     */
+    private static List<Endpoint> parseEndpoints(String url) {
+        int start = authorityStart(url);
+        if (start == -1) {
+            return Collections.emptyList();
+        }
+        String authority = url.substring(start, authorityEnd(url, start));
+        List<Endpoint> endpoints = new ArrayList<>(1);
+        int hostStart = 0;
+        int depth = 0;
+        for (int i = 0; i <= authority.length(); i++) {
+            char c = i < authority.length() ? authority.charAt(i) : ',';
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth <= 0) {
+                // Commas within MySQL's (host=...,port=...) form don't separate hosts
+                Endpoint endpoint = Endpoint.parse(authority.substring(hostStart, i));
+                if (endpoint != null) {
+                    endpoints.add(endpoint);
+                }
+                hostStart = i + 1;
+                depth = 0;
+            }
+        }
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    /** The index the authority starts at, or -1 if the URL has no authority. */
+    private static int authorityStart(String url) {
+        int separator = url.indexOf("://");
+        if (separator == -1) {
+            return -1;
+        }
+        for (int i = 0; i < separator; i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                // The separator is within the path or query
+                return -1;
+            }
+        }
+        return separator + 3;
+    }
+
+    private static int authorityEnd(String url, int start) {
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    /**
+     * Replaces the authority of the URL, for example to connect to just one of the hosts of a
+     * multi-host URL.
+     */
+    static String replaceAuthority(String url, Endpoint endpoint) {
+        int start = authorityStart(url);
+        if (start == -1) {
+            return url;
+        }
+        return url.substring(0, start)
+                + endpoint.authority
+                + url.substring(authorityEnd(url, start));
+    }
+
+    static String replaceScheme(String url, String wrapperPrefix, String delegateSchemeName) {
+        return IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX
+                + delegateSchemeName
+                + url.substring(wrapperPrefix.length() - 1);
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    boolean isWrapperScheme() {
+        return wrapperScheme;
+    }
+
+    /** The first host within the URL, or null if none was specified. */
+    String getHost() {
+        return endpoints.isEmpty() ? null : endpoints.get(0).getHost();
+    }
+
+    /** The port of the first host within the URL, or -1 if none was specified. */
+    int getPort() {
+        return endpoints.isEmpty() ? -1 : endpoints.get(0).getPort();
+    }
+
+    /** Every host within the URL, in the order they were specified. */
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    Map<String, String> getQueryProperties() {
+        return queryProperties;
+    }
+
+    /**
+     * The URL to pass to the delegate driver, or null if the delegate scheme name was not known
+     * when the URL was parsed.
+     */
+    String getConnectUrl() {
+        return connectUrl;
+    }
+
+    /** A single host, and optionally port, within the authority of a URL. */
+    static final class Endpoint {
+        private static final String ADDRESS_PREFIX = "address=";
+
+        private final String authority;
+        private final String host;
+        private final int port;
+
+        private Endpoint(String authority, String host, int port) {
+            this.authority = authority;
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * Parses {@code host}, {@code host:port}, {@code [ipv6]} or {@code [ipv6]:port},
+         * optionally preceded by user info, or MySQL's {@code address=(host=host)(port=port)} and
+         * {@code (host=host,port=port)} forms. Returns null if there is no host or the port is not
+         * a number.
+         */
+        private static Endpoint parse(String authority) {
+            if (authority.startsWith(ADDRESS_PREFIX) || authority.startsWith("(")) {
+                return parseKeyValues(authority);
+            }
+            String hostAndPort = authority.substring(authority.lastIndexOf('@') + 1);
+            String host;
+            int portSeparator;
+            if (hostAndPort.startsWith("[")) {
+                int hostEnd = hostAndPort.indexOf(']');
+                if (hostEnd == -1) {
+                    return null;
+                }
+                host = hostAndPort.substring(1, hostEnd);
+                portSeparator = hostEnd + 1;
+                if (portSeparator == hostAndPort.length()) {
+                    portSeparator = -1;
+                } else if (hostAndPort.charAt(portSeparator) != ':') {
+                    return null;
+                }
+            } else {
+                portSeparator = hostAndPort.lastIndexOf(':');
+                host = portSeparator == -1 ? hostAndPort : hostAndPort.substring(0, portSeparator);
+            }
+            if (host.isEmpty()) {
+                return null;
+            }
+            int port = -1;
+            if (portSeparator != -1 && portSeparator < hostAndPort.length() - 1) {
+                try {
+                    port = Integer.parseInt(hostAndPort.substring(portSeparator + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return new Endpoint(authority, host, port);
+        }
+
+        /**
+         * Parses the host and port from MySQL's key-value host forms, ignoring any other keys,
+         * which the delegate still receives as the URL is passed on unchanged.
+         */
+        private static Endpoint parseKeyValues(String authority) {
+            String keyValues =
+                    authority.startsWith(ADDRESS_PREFIX)
+                            ? authority.substring(ADDRESS_PREFIX.length())
+                            : authority;
+            String host = null;
+            int port = -1;
+            for (String keyValue : keyValues.split("[(),]")) {
+                int separator = keyValue.indexOf('=');
+                if (separator == -1) {
+                    continue;
+                }
+                String key = keyValue.substring(0, separator).trim();
+                String value = keyValue.substring(separator + 1).trim();
+                if (key.equalsIgnoreCase("host")) {
+                    host =
+                            value.startsWith("[") && value.endsWith("]")
+                                    ? value.substring(1, value.length() - 1)
+                                    : value;
+                } else if (key.equalsIgnoreCase("port")) {
+                    try {
+                        port = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+            }
+            if (host == null || host.isEmpty()) {
+                return null;
+            }
+            return new Endpoint(authority, host, port);
+        }
+
+        /** The host, without the brackets around an IPv6 address. */
+        String getHost() {
+            return host;
+        }
+
+        /** The host as written in a URI, with an IPv6 address in brackets. */
+        String getUriHost() {
+            return host.indexOf(':') == -1 ? host : "[" + host + "]";
+        }
+
+        /** The port, or -1 if none was specified. */
+        int getPort() {
+            return port;
+        }
+
+        @Override
+        public String toString() {
+            return port == -1 ? getUriHost() : getUriHost() + ":" + port;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bounded cache of parsed JDBC URLs, evicting URLs that have not been used recently once full.
+ *
+ * <p>Lookups take no lock, as {@link java.sql.DriverManager} calls {@code acceptsURL} on every
+ * registered driver for every connect. Eviction is approximately least recently used: a lookup
+ * marks its URL as used, and a put that finds the cache full removes URLs that have not been
+ * marked since the last eviction, clearing the mark of those that have. Puts may overshoot the
+ * maximum size while another put is evicting.
+ *
+ * <p>URLs that carry a password or AWS secret key in their query string are never cached, so the
+ * cache holds nothing that the connection pool configuring the URL doesn't already hold.
+ */
+final class JdbcUrlDescriptorCache {
+
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Map<String, Entry> descriptors = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxSize;
+
+    JdbcUrlDescriptorCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    JdbcUrlDescriptor get(String url) {
+        Entry entry = descriptors.get(url);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.used) {
+            // Only written when clear, so URLs in constant use are read without any writes
+            entry.used = true;
+        }
+        return entry.descriptor;
+    }
+
+    /**
+     * Caches the descriptor, unless its query string contains any of the given secret properties.
+     */
+    void put(JdbcUrlDescriptor descriptor, String... secretProperties) {
+        Map<String, String> queryProperties = descriptor.getQueryProperties();
+        for (String secretProperty : secretProperties) {
+            if (queryProperties.containsKey(secretProperty)) {
+                return;
+            }
+        }
+        descriptors.put(descriptor.getUrl(), new Entry(descriptor));
+        if (descriptors.size() > maxSize) {
+            evict(descriptor.getUrl());
+        }
+    }
+
+    int size() {
+        return descriptors.size();
+    }
+
+    /**
+     * Removes unused URLs until the cache is back within its maximum size, giving used URLs a
+     * second chance, and never removing the URL that was just put.
+     */
+    private void evict(String putUrl) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // The first pass clears every mark it passes, so the second finds unused URLs
+            for (int pass = 0; pass < 2 && descriptors.size() > maxSize; pass++) {
+                Iterator<Map.Entry<String, Entry>> iterator = descriptors.entrySet().iterator();
+                while (iterator.hasNext() && descriptors.size() > maxSize) {
+                    Map.Entry<String, Entry> next = iterator.next();
+                    if (next.getKey().equals(putUrl)) {
+                        continue;
+                    }
+                    Entry entry = next.getValue();
+                    if (entry.used) {
+                        entry.used = false;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Entry {
+        private final JdbcUrlDescriptor descriptor;
+        private volatile boolean used;
+
+        private Entry(JdbcUrlDescriptor descriptor) {
+            this.descriptor = descriptor;
+        }
+    }
+}
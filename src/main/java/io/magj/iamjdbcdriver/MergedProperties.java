@@ -0,0 +1,54 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A read-only view of JDBC URL query properties layered over connection properties.
+ *
+ * <p>Lookups consult the URL properties first and then the connection properties, so individual
+ * properties can be read without copying every connection property into a new map on each
+ * connect. The full merged map is only built if the view is iterated.
+ */
+final class MergedProperties extends AbstractMap<String, String> {
+
+    private final Map<String, String> uriProperties;
+    private final Properties connectionProperties;
+    private Map<String, String> merged;
+
+    MergedProperties(Map<String, String> uriProperties, Properties connectionProperties) {
+        this.uriProperties = uriProperties;
+        this.connectionProperties = connectionProperties;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String value = uriProperties.get(key);
+        return value != null ? value : connectionProperties.getProperty((String) key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        if (merged == null) {
+            Map<String, String> map = new LinkedHashMap<>();
+            connectionProperties
+                    .stringPropertyNames()
+                    .forEach(name -> map.put(name, connectionProperties.getProperty(name)));
+            map.putAll(uriProperties);
+            merged = Collections.unmodifiableMap(map);
+        }
+        return merged.entrySet();
+    }
+}
@@ -0,0 +1,144 @@
+package io.magj.iamjdbcdriver;
+
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Everything {@link IamAuthJdbcDriverWrapper} works out from a URL and connection properties
+ * before generating a token: the delegate driver, the URL to pass it, and a token request for
+ * every host. Connects with the same URL and properties, such as those of {@link
+ * IamAuthDataSource}, can reuse it rather than working it out again.
+ */
+final class PreparedConnect {
+
+    private final Driver delegate;
+    private final String connectUrl;
+    private final List<JdbcUrlDescriptor.Endpoint> endpoints;
+    private final RdsIamAuthTokenRequest[] tokenRequests;
+    private final Exception[] tokenRequestFailures;
+    private final boolean failFast;
+    private final boolean raceMultiHost;
+    private final boolean retryRejectedToken;
+    private final long connectRateLimit;
+    private final long connectRateLimitBurst;
+    private final String[] connectRateLimitKeys;
+    private final long loginTimeoutNanos;
+    private final String delegateTimeoutProperty;
+
+    /**
+     * @param tokenRequests one per host, or a single request if the URL has no host, with a null
+     *     entry wherever the request could not be created
+     * @param tokenRequestFailures why each null token request could not be created
+     * @param connectRateLimit connects per second allowed to each host, or 0 if not limited
+     * @param connectRateLimitKeys the host and port of each host, that connects are limited by
+     * @param loginTimeoutNanos the login timeout configured by property, or 0 if there is none
+     * @param delegateTimeoutProperty the delegate's property that the rest of the login timeout is
+     *     passed on in, or null if the delegate's timeout properties are not known
+     */
+    PreparedConnect(
+            Driver delegate,
+            String connectUrl,
+            List<JdbcUrlDescriptor.Endpoint> endpoints,
+            RdsIamAuthTokenRequest[] tokenRequests,
+            Exception[] tokenRequestFailures,
+            boolean failFast,
+            boolean raceMultiHost,
+            boolean retryRejectedToken,
+            long connectRateLimit,
+            long connectRateLimitBurst,
+            String[] connectRateLimitKeys,
+            long loginTimeoutNanos,
+            String delegateTimeoutProperty) {
+        this.delegate = delegate;
+        this.connectUrl = connectUrl;
+        this.endpoints = endpoints;
+        this.tokenRequests = tokenRequests;
+        this.tokenRequestFailures = tokenRequestFailures;
+        this.failFast = failFast;
+        this.raceMultiHost = raceMultiHost;
+        this.retryRejectedToken = retryRejectedToken;
+        this.connectRateLimit = connectRateLimit;
+        this.connectRateLimitBurst = connectRateLimitBurst;
+        this.connectRateLimitKeys = connectRateLimitKeys;
+        this.loginTimeoutNanos = loginTimeoutNanos;
+        this.delegateTimeoutProperty = delegateTimeoutProperty;
+    }
+
+    Driver getDelegate() {
+        return delegate;
+    }
+
+    String getConnectUrl() {
+        return connectUrl;
+    }
+
+    List<JdbcUrlDescriptor.Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    boolean isMultiHost() {
+        return endpoints.size() > 1;
+    }
+
+    /**
+     * The token request for the host at the given index.
+     *
+     * @throws SQLException wrapping the reason the request could not be created, such as a
+     *     missing host or port. A new one for every call, as connects sharing this may fail at the
+     *     same time
+     */
+    RdsIamAuthTokenRequest getTokenRequest(int index) throws SQLException {
+        if (tokenRequests[index] == null) {
+            Exception failure = tokenRequestFailures[index];
+            throw new SQLException(
+                    failure.getMessage(),
+                    failure instanceof SQLException
+                            ? ((SQLException) failure).getSQLState()
+                            : null,
+                    failure);
+        }
+        return tokenRequests[index];
+    }
+
+    boolean isFailFast() {
+        return failFast;
+    }
+
+    boolean isRaceMultiHost() {
+        return raceMultiHost;
+    }
+
+    boolean isRetryRejectedToken() {
+        return retryRejectedToken;
+    }
+
+    boolean isConnectRateLimited() {
+        return connectRateLimit > 0;
+    }
+
+    long getConnectRateLimit() {
+        return connectRateLimit;
+    }
+
+    long getConnectRateLimitBurst() {
+        return connectRateLimitBurst;
+    }
+
+    String getConnectRateLimitKey(int index) {
+        return connectRateLimitKeys[index];
+    }
+
+    long getLoginTimeoutNanos() {
+        return loginTimeoutNanos;
+    }
+
+    String getDelegateTimeoutProperty() {
+        return delegateTimeoutProperty;
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedConnect{connectUrl=" + connectUrl + ", delegate=" + delegate + "}";
+    }
+}
@@ -0,0 +1,192 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, thread-safe cache of RDS IAM auth tokens.
+ *
+ * <p>Tokens are valid for 15 minutes from the time they are signed, so a token may be handed to
+ * any number of new connections within that window. The reuse window is supplied by the caller on
+ * each lookup, and is always capped at {@link #MAX_REUSE_MILLIS} to leave headroom for clock skew
+ * and the time taken to actually establish the connection.
+ *
+ * <p>There is one cache per JVM, so its size is a single setting rather than a connection
+ * property. Puts may overshoot the maximum size by the number of puts of new keys running at the
+ * same time, each evicts down to the maximum again once its token is in. Those concurrent
+ * evictions may each remove a token, briefly leaving fewer than the maximum.
+ */
+final class RdsIamAuthTokenCache {
+
+    static final long TOKEN_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    static final long MAX_REUSE_MILLIS = TimeUnit.MINUTES.toMillis(14);
+    static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final Map<RdsIamAuthTokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final SingleFlight<RdsIamAuthTokenKey, String> generations;
+    private final IamAuthMetrics metrics;
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    RdsIamAuthTokenCache(
+            SingleFlight<RdsIamAuthTokenKey, String> generations, IamAuthMetrics metrics) {
+        this.generations = generations;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns a cached token for the key if one was issued within the reuse window, otherwise
+     * generates, caches and returns a new one.
+     *
+     * <p>Concurrent misses for the same key share a single generation.
+     */
+    String getOrGenerate(RdsIamAuthTokenKey key, long reuseMillis, Supplier<String> generator) {
+        String cached = get(key, reuseMillis);
+        if (cached != null) {
+            metrics.tokenCacheHit();
+            return cached;
+        }
+        metrics.tokenCacheMiss();
+        return generations.execute(
+                key,
+                () -> {
+                    // Another thread may have cached a token since the miss above
+                    String raced = get(key, reuseMillis);
+                    if (raced != null) {
+                        return raced;
+                    }
+                    long issuedAt = System.currentTimeMillis();
+                    String token = generator.get();
+                    put(key, new CachedToken(token, issuedAt));
+                    return token;
+                });
+    }
+
+    /**
+     * Generates and caches a new token for the key, regardless of any token already cached. A
+     * generation already in flight for the key, such as a connect's, is shared rather than
+     * repeated.
+     */
+    void refresh(RdsIamAuthTokenKey key, Supplier<String> generator) {
+        generations.execute(
+                key,
+                () -> {
+                    long issuedAt = System.currentTimeMillis();
+                    String token = generator.get();
+                    put(key, new CachedToken(token, issuedAt));
+                    return token;
+                });
+    }
+
+    String get(RdsIamAuthTokenKey key, long reuseMillis) {
+        CachedToken cached = tokens.get(key);
+        if (cached == null) {
+            return null;
+        }
+        long age = System.currentTimeMillis() - cached.issuedAtMillis;
+        if (age < 0 || age >= Math.min(reuseMillis, MAX_REUSE_MILLIS)) {
+            tokens.remove(key, cached);
+            return null;
+        }
+        return cached.token;
+    }
+
+    CachedToken getEntry(RdsIamAuthTokenKey key) {
+        return tokens.get(key);
+    }
+
+    void put(RdsIamAuthTokenKey key, CachedToken token) {
+        tokens.compute(
+                key,
+                (k, previous) ->
+                        // A newer token may have been cached concurrently, keep it
+                        previous != null && previous.issuedAtMillis > token.issuedAtMillis
+                                ? previous
+                                : token);
+        if (tokens.size() > maxSize) {
+            evict();
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /** Sets the most tokens to keep, evicting the oldest tokens if there are more. */
+    void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        if (tokens.size() > maxSize) {
+            evict();
+        }
+    }
+
+    void invalidate(RdsIamAuthTokenKey key) {
+        tokens.remove(key);
+    }
+
+    /**
+     * Removes the token cached for the key, only if it is the given token, so that a token that
+     * has already replaced it is kept.
+     */
+    void invalidate(RdsIamAuthTokenKey key, String token) {
+        CachedToken cached = tokens.get(key);
+        if (cached != null && cached.token.equals(token)) {
+            tokens.remove(key, cached);
+        }
+    }
+
+    void clear() {
+        tokens.clear();
+    }
+
+    int size() {
+        return tokens.size();
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<CachedToken> iterator = tokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().issuedAtMillis >= MAX_REUSE_MILLIS) {
+                iterator.remove();
+            }
+        }
+        while (tokens.size() > maxSize) {
+            RdsIamAuthTokenKey oldestKey = null;
+            long oldestIssuedAt = Long.MAX_VALUE;
+            for (Map.Entry<RdsIamAuthTokenKey, CachedToken> entry : tokens.entrySet()) {
+                if (entry.getValue().issuedAtMillis < oldestIssuedAt) {
+                    oldestIssuedAt = entry.getValue().issuedAtMillis;
+                    oldestKey = entry.getKey();
+                }
+            }
+            if (oldestKey == null) {
+                return;
+            }
+            tokens.remove(oldestKey);
+        }
+    }
+
+    static final class CachedToken {
+        private final String token;
+        private final long issuedAtMillis;
+
+        CachedToken(String token, long issuedAtMillis) {
+            this.token = token;
+            this.issuedAtMillis = issuedAtMillis;
+        }
+
+        String getToken() {
+            return token;
+        }
+
+        long getIssuedAtMillis() {
+            return issuedAtMillis;
+        }
+    }
+}
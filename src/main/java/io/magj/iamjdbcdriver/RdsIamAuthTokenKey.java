@@ -0,0 +1,79 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Objects;
+
+/** Everything an RDS IAM auth token is bound to: the endpoint, the user and the signer. */
+final class RdsIamAuthTokenKey {
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String region;
+    private final CredentialProviderKey credentials;
+    private final int hashCode;
+
+    RdsIamAuthTokenKey(
+            String host, int port, String user, String region, CredentialProviderKey credentials) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.region = region;
+        this.credentials = credentials;
+        this.hashCode = Objects.hash(host, port, user, region, credentials);
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getUser() {
+        return user;
+    }
+
+    String getRegion() {
+        return region;
+    }
+
+    CredentialProviderKey getCredentials() {
+        return credentials;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        RdsIamAuthTokenKey that = (RdsIamAuthTokenKey) o;
+        return port == that.port
+                && Objects.equals(host, that.host)
+                && Objects.equals(user, that.user)
+                && Objects.equals(region, that.region)
+                && Objects.equals(credentials, that.credentials);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "Host="
+                + host
+                + ", Port="
+                + port
+                + ", Username="
+                + user
+                + ", Region="
+                + region
+                + ", Credentials="
+                + credentials;
+    }
+}
@@ -0,0 +1,154 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the {@link RdsIamAuthTokenCache} populated for every endpoint that has recently been
+ * connected to, so that {@code connect} can read a ready token rather than signing one on the
+ * calling thread.
+ *
+ * <p>The daemon thread of a scheduler shared by every refresher periodically checks for tokens
+ * that are about to reach the end of their reuse window, and forgets endpoints that have not
+ * been connected to within their idle timeout. Tokens are re-signed on the token executor rather
+ * than on that thread, at most one at a time per endpoint, so a credential or STS request that
+ * hangs only delays the refresh of the endpoints waiting on it.
+ */
+final class RdsIamAuthTokenRefresher {
+
+    private static final Logger LOGGER = Logger.getLogger(RdsIamAuthTokenRefresher.class.getName());
+
+    static final long CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    static final long REFRESH_AHEAD_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    /** The refresh lead is capped at this fraction of the reuse window. */
+    private static final int MAX_REFRESH_AHEAD_DIVISOR = 4;
+
+    private final RdsIamAuthTokenCache cache;
+    private final Executor executor;
+    private final Map<RdsIamAuthTokenKey, Registration> registrations = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> checks;
+
+    RdsIamAuthTokenRefresher(RdsIamAuthTokenCache cache) {
+        this(cache, ConnectExecutors.tokenExecutor(), CHECK_INTERVAL_MILLIS);
+    }
+
+    RdsIamAuthTokenRefresher(
+            RdsIamAuthTokenCache cache, Executor executor, long checkIntervalMillis) {
+        this.cache = cache;
+        this.executor = executor;
+        this.checks =
+                ConnectExecutors.refreshScheduler()
+                        .scheduleWithFixedDelay(
+                                this::refresh,
+                                checkIntervalMillis,
+                                checkIntervalMillis,
+                                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that a connection was requested for the key, the generator will be used to re-sign
+     * the token for as long as the key continues to be used.
+     */
+    void register(
+            RdsIamAuthTokenKey key,
+            long reuseMillis,
+            long idleTimeoutMillis,
+            Supplier<String> generator) {
+        Registration registration =
+                registrations.computeIfAbsent(
+                        key, k -> new Registration(reuseMillis, idleTimeoutMillis, generator));
+        registration.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    int size() {
+        return registrations.size();
+    }
+
+    void shutdown() {
+        checks.cancel(false);
+        registrations.clear();
+    }
+
+    /**
+     * How long before the end of the reuse window a token is re-signed. Short reuse windows get a
+     * proportionally shorter lead, so their tokens are still reused for most of the window rather
+     * than re-signed on every check.
+     */
+    static long refreshAheadMillis(long reuseMillis) {
+        return Math.min(REFRESH_AHEAD_MILLIS, reuseMillis / MAX_REFRESH_AHEAD_DIVISOR);
+    }
+
+    /** Starts a refresh of every token that is due, and forgets idle endpoints. */
+    void refresh() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<RdsIamAuthTokenKey, Registration>> iterator =
+                registrations.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<RdsIamAuthTokenKey, Registration> entry = iterator.next();
+            RdsIamAuthTokenKey key = entry.getKey();
+            Registration registration = entry.getValue();
+            if (now - registration.lastUsedMillis > registration.idleTimeoutMillis) {
+                LOGGER.fine(() -> "No longer refreshing idle RDS IAM auth token for: " + key);
+                iterator.remove();
+                continue;
+            }
+            RdsIamAuthTokenCache.CachedToken cached = cache.getEntry(key);
+            long reuseMillis =
+                    Math.min(registration.reuseMillis, RdsIamAuthTokenCache.MAX_REUSE_MILLIS);
+            if (cached != null
+                    && now - cached.getIssuedAtMillis()
+                            < reuseMillis - refreshAheadMillis(reuseMillis)) {
+                continue;
+            }
+            if (!registration.refreshing.compareAndSet(false, true)) {
+                // The previous refresh is still running
+                continue;
+            }
+            try {
+                executor.execute(() -> refresh(key, registration));
+            } catch (RejectedExecutionException e) {
+                registration.refreshing.set(false);
+                LOGGER.log(Level.FINE, "RDS IAM auth token refresh deferred for: " + key, e);
+            }
+        }
+    }
+
+    private void refresh(RdsIamAuthTokenKey key, Registration registration) {
+        try {
+            cache.refresh(key, registration.generator);
+            LOGGER.fine(() -> "Refreshed RDS IAM auth token for: " + key);
+        } catch (TokenGenerationCircuitBreaker.OpenException e) {
+            // The failure that opened the circuit was already logged
+            LOGGER.fine(
+                    () -> "RDS IAM auth token refresh skipped for: " + key + ", " + e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "RDS IAM auth token refresh failed for: " + key, e);
+        } finally {
+            registration.refreshing.set(false);
+        }
+    }
+
+    private static final class Registration {
+        private final long reuseMillis;
+        private final long idleTimeoutMillis;
+        private final Supplier<String> generator;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastUsedMillis;
+
+        private Registration(
+                long reuseMillis, long idleTimeoutMillis, Supplier<String> generator) {
+            this.reuseMillis = reuseMillis;
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            this.generator = generator;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything needed to generate, or look up a cached, RDS IAM auth token for one host, parsed
+ * from the connection properties once so that it can be reused for many connects.
+ */
+final class RdsIamAuthTokenRequest {
+
+    private static final long DEFAULT_TOKEN_CACHE_REUSE_SECONDS = 600;
+    private static final long DEFAULT_TOKEN_REFRESH_IDLE_TIMEOUT_SECONDS = 3600;
+    private static final long DEFAULT_FAILURE_BACKOFF_MILLIS = 0;
+    private static final long DEFAULT_FAILURE_MAX_BACKOFF_MILLIS = 60_000;
+    private static final String SDK_TOKEN_SIGNER = "sdk";
+    private static final String BUILTIN_TOKEN_SIGNER = "builtin";
+
+    private final String host;
+    private final int port;
+    private final String user;
+    private final String regionProperty;
+    private final String awsProfile;
+    private final CredentialProviderKey credentialProviderKey;
+    private final boolean builtinSigner;
+    private final boolean cacheEnabled;
+    private final long reuseMillis;
+    private final boolean refreshAheadEnabled;
+    private final long refreshIdleTimeoutMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private RdsIamAuthTokenRequest(
+            String host, int port, String user, Map<String, String> properties) {
+        this.host = host;
+        this.port = port;
+        this.user = user;
+        this.regionProperty = properties.get(IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY);
+        this.awsProfile = properties.get(IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY);
+        this.credentialProviderKey = CredentialProviderKey.from(properties);
+        this.builtinSigner = useBuiltinTokenSigner(properties);
+        this.cacheEnabled =
+                IamAuthJdbcDriverWrapper.booleanProperty(
+                        properties,
+                        IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY,
+                        true);
+        this.reuseMillis =
+                TimeUnit.SECONDS.toMillis(
+                        IamAuthJdbcDriverWrapper.longProperty(
+                                properties,
+                                IamAuthJdbcDriverWrapper
+                                        .IAM_AUTH_TOKEN_CACHE_REUSE_SECONDS_PROPERTY,
+                                DEFAULT_TOKEN_CACHE_REUSE_SECONDS));
+        this.refreshAheadEnabled =
+                IamAuthJdbcDriverWrapper.booleanProperty(
+                        properties,
+                        IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_REFRESH_AHEAD_ENABLED_PROPERTY,
+                        false);
+        this.refreshIdleTimeoutMillis =
+                TimeUnit.SECONDS.toMillis(
+                        IamAuthJdbcDriverWrapper.longProperty(
+                                properties,
+                                IamAuthJdbcDriverWrapper
+                                        .IAM_AUTH_TOKEN_REFRESH_IDLE_TIMEOUT_SECONDS_PROPERTY,
+                                DEFAULT_TOKEN_REFRESH_IDLE_TIMEOUT_SECONDS));
+        this.initialBackoffMillis =
+                IamAuthJdbcDriverWrapper.longProperty(
+                        properties,
+                        IamAuthJdbcDriverWrapper.IAM_AUTH_FAILURE_BACKOFF_MILLIS_PROPERTY,
+                        DEFAULT_FAILURE_BACKOFF_MILLIS);
+        this.maxBackoffMillis =
+                IamAuthJdbcDriverWrapper.longProperty(
+                        properties,
+                        IamAuthJdbcDriverWrapper.IAM_AUTH_FAILURE_MAX_BACKOFF_MILLIS_PROPERTY,
+                        DEFAULT_FAILURE_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the wrapper's properties have invalid values
+     */
+    static RdsIamAuthTokenRequest from(
+            String host, int port, String user, Map<String, String> properties) {
+        return new RdsIamAuthTokenRequest(host, port, user, properties);
+    }
+
+    private static boolean useBuiltinTokenSigner(Map<String, String> properties) {
+        String signer = properties.get(IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY);
+        if (signer == null || SDK_TOKEN_SIGNER.equalsIgnoreCase(signer.trim())) {
+            return false;
+        } else if (BUILTIN_TOKEN_SIGNER.equalsIgnoreCase(signer.trim())) {
+            return true;
+        }
+        throw new IllegalArgumentException(
+                "Invalid value for property "
+                        + IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY
+                        + ": "
+                        + signer);
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    String getUser() {
+        return user;
+    }
+
+    /** The region configured by property, or null if it is to be resolved. */
+    String getRegionProperty() {
+        return regionProperty;
+    }
+
+    String getAwsProfile() {
+        return awsProfile;
+    }
+
+    CredentialProviderKey getCredentialProviderKey() {
+        return credentialProviderKey;
+    }
+
+    boolean isBuiltinSigner() {
+        return builtinSigner;
+    }
+
+    boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    long getReuseMillis() {
+        return reuseMillis;
+    }
+
+    boolean isRefreshAheadEnabled() {
+        return refreshAheadEnabled;
+    }
+
+    long getRefreshIdleTimeoutMillis() {
+        return refreshIdleTimeoutMillis;
+    }
+
+    long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+}
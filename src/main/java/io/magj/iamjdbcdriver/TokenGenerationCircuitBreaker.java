@@ -0,0 +1,144 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers failures to generate RDS IAM auth tokens per credentials, so that while credentials
+ * cannot be resolved, for example during an instance metadata or STS outage, connects fail
+ * immediately rather than each repeating the slow, failing lookup.
+ *
+ * <p>After a failure, further attempts with the same credentials are rejected for a backoff
+ * period, which doubles with each consecutive failure up to a maximum. Once the backoff has
+ * elapsed a single caller is let through to try again, while others continue to be rejected until
+ * it succeeds, closing the circuit, or fails, reopening it for longer.
+ *
+ * <p>Generations that were already in flight when a failure was recorded, typically those sharing
+ * the same credentials lookup, count towards that failure rather than each lengthening the
+ * backoff.
+ */
+final class TokenGenerationCircuitBreaker {
+
+    private final IamAuthMetrics metrics;
+    private final Map<CredentialProviderKey, Failure> failures = new ConcurrentHashMap<>();
+
+    TokenGenerationCircuitBreaker(IamAuthMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the generation, unless a recent failure for the same credentials is still backing off.
+     *
+     * @param initialBackoffMillis how long to reject generations for after a first failure, or 0
+     *     to always run the generation
+     * @throws OpenException if the generation was rejected
+     */
+    <T> T execute(
+            CredentialProviderKey key,
+            long initialBackoffMillis,
+            long maxBackoffMillis,
+            Supplier<T> generation) {
+        if (initialBackoffMillis <= 0) {
+            return generation.get();
+        }
+        Failure failure = failures.get(key);
+        if (failure != null) {
+            long now = System.nanoTime();
+            // Let one caller through to try again, pushing back the retry time for the others
+            if (now - failure.retryAtNanos < 0
+                    || !failures.replace(key, failure, failure.retrying(now))) {
+                metrics.tokenGenerationRejected();
+                throw new OpenException(key, failure, now);
+            }
+        }
+        long startNanos = System.nanoTime();
+        try {
+            T result = generation.get();
+            if (failure != null) {
+                failures.remove(key);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            metrics.tokenGenerationFailed();
+            long now = System.nanoTime();
+            failures.compute(
+                    key,
+                    (k, previous) ->
+                            previous != null && previous.failedAtNanos - startNanos >= 0
+                                    ? previous
+                                    : Failure.after(
+                                            previous,
+                                            e,
+                                            now,
+                                            initialBackoffMillis,
+                                            maxBackoffMillis));
+            throw e;
+        }
+    }
+
+    private static final class Failure {
+        private final RuntimeException cause;
+        private final int consecutiveFailures;
+        private final long failedAtNanos;
+        private final long backoffNanos;
+        private final long retryAtNanos;
+
+        private Failure(
+                RuntimeException cause,
+                int consecutiveFailures,
+                long failedAtNanos,
+                long backoffNanos,
+                long retryAtNanos) {
+            this.cause = cause;
+            this.consecutiveFailures = consecutiveFailures;
+            this.failedAtNanos = failedAtNanos;
+            this.backoffNanos = backoffNanos;
+            this.retryAtNanos = retryAtNanos;
+        }
+
+        private static Failure after(
+                Failure previous,
+                RuntimeException cause,
+                long now,
+                long initialBackoffMillis,
+                long maxBackoffMillis) {
+            long maxBackoffNanos =
+                    TimeUnit.MILLISECONDS.toNanos(Math.max(initialBackoffMillis, maxBackoffMillis));
+            long backoffNanos =
+                    previous == null
+                            ? TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis)
+                            : Math.min(previous.backoffNanos * 2, maxBackoffNanos);
+            int consecutiveFailures = previous == null ? 1 : previous.consecutiveFailures + 1;
+            return new Failure(
+                    cause, consecutiveFailures, now, backoffNanos, now + backoffNanos);
+        }
+
+        private Failure retrying(long now) {
+            return new Failure(
+                    cause, consecutiveFailures, failedAtNanos, backoffNanos, now + backoffNanos);
+        }
+    }
+
+    /**
+     * Thrown instead of generating a token while the circuit for the credentials is open, with
+     * the most recent failure as its cause.
+     */
+    static final class OpenException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private OpenException(CredentialProviderKey key, Failure failure, long now) {
+            super(
+                    "RDS IAM auth token generation for "
+                            + key
+                            + " has failed "
+                            + failure.consecutiveFailures
+                            + " consecutive times, not retrying for another "
+                            + Math.max(0, TimeUnit.NANOSECONDS.toMillis(failure.retryAtNanos - now))
+                            + "ms",
+                    failure.cause);
+        }
+    }
+}
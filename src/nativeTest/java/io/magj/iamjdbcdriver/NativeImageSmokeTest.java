@@ -0,0 +1,106 @@
+package io.magj.iamjdbcdriver;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.util.Properties;
+
+/**
+ * Connects through the wrappers with a stub delegate, to be built as a GraalVM native image by the
+ * {@code nativeTest} task, checking that the reachability metadata shipped in {@code
+ * META-INF/native-image} is enough to sign tokens with both signers and connect.
+ *
+ * <p>Signers to check may be given as arguments, both are checked by default.
+ *
+ * <p>The stub delegates are never registered for reflection, so connecting also checks that
+ * delegates are resolved without it: one is found through {@link DriverManager}, the other
+ * through {@link IamAuthJdbcDriverWrapper#registerDelegateDriver(String, Driver)}.
+ */
+public final class NativeImageSmokeTest {
+
+    private static final String HOST =
+            "smoke-test.cluster-abcdefghijkl.us-east-1.rds.amazonaws.com";
+    private static final int PORT = 5432;
+    private static final String USER = "smoke_test";
+    private static final String STUB_SCHEME_NAME = "stubdb";
+
+    private NativeImageSmokeTest() {}
+
+    public static void main(String[] args) throws Exception {
+        StubDriver registeredWithDriverManager =
+                new StubDriver(PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME);
+        DriverManager.registerDriver(registeredWithDriverManager);
+        StubDriver registeredWithWrapper = new RegisteredStubDriver();
+        IamAuthJdbcDriverWrapper.registerDelegateDriver(STUB_SCHEME_NAME, registeredWithWrapper);
+
+        String[] signers = args.length > 0 ? args : new String[] {"sdk", "builtin"};
+        for (String signer : signers) {
+            Properties properties = properties(signer);
+            properties.setProperty(
+                    IamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_PROPERTY,
+                    StubDriver.class.getName());
+            check(
+                    "iampostgresql, " + signer + " signer",
+                    DriverManager.getConnection(
+                            "jdbc:iampostgresql://" + HOST + ":" + PORT + "/smoke", properties),
+                    registeredWithDriverManager);
+
+            check(
+                    "registered delegate, " + signer + " signer",
+                    DriverManager.getConnection(
+                            "jdbc:"
+                                    + STUB_SCHEME_NAME
+                                    + "://"
+                                    + HOST
+                                    + ":"
+                                    + PORT
+                                    + "/smoke?"
+                                    + IamAuthJdbcDriverWrapper.DELEGATE_DRIVER_SCHEME_NAME_PROPERTY
+                                    + "="
+                                    + STUB_SCHEME_NAME,
+                            properties(signer)),
+                    registeredWithWrapper);
+        }
+        System.out.println("Native image smoke test passed");
+    }
+
+    private static Properties properties(String signer) {
+        Properties properties = new Properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY, USER);
+        properties.setProperty(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY, "AKIDEXAMPLE");
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+        properties.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY, signer);
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY, "false");
+        properties.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_FAIL_FAST_PROPERTY, "true");
+        return properties;
+    }
+
+    private static void check(String name, Connection connection, StubDriver delegate) {
+        if (connection == null) {
+            throw new IllegalStateException(name + ": no connection returned");
+        }
+        StubDriver.Connect connect = StubDriver.recorded(connection);
+        if (connect != delegate.getLastConnect()) {
+            throw new IllegalStateException(name + ": connected through the wrong delegate");
+        }
+        String token = connect.password;
+        if (token == null
+                || !token.startsWith(HOST + ":" + PORT + "/?")
+                || !token.contains("DBUser=" + USER)
+                || !token.contains("X-Amz-Signature=")) {
+            throw new IllegalStateException(name + ": unexpected token: " + token);
+        }
+        System.out.println(name + ": connected");
+    }
+
+    /** A distinct stub driver class, as delegates are registered with the wrapper by class. */
+    static final class RegisteredStubDriver extends StubDriver {
+
+        RegisteredStubDriver() {
+            super(STUB_SCHEME_NAME);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class AwsCredentialsProviderCacheTest {
+
+    private final AwsCredentialsProviderCache cache = new AwsCredentialsProviderCache(2);
+    private final AtomicInteger created = new AtomicInteger();
+
+    @Test
+    public void reusesProviderForTheSameKey() {
+        TestProvider first = resolve(key("a"));
+        TestProvider second = resolve(key("a"));
+
+        assertSame(first, second);
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void closesLeastRecentlyUsedProviderWhenFull() throws InterruptedException {
+        TestProvider a = resolve(key("a"));
+        Thread.sleep(1);
+        TestProvider b = resolve(key("b"));
+        Thread.sleep(1);
+        resolve(key("a"));
+        Thread.sleep(1);
+        resolve(key("c"));
+
+        assertEquals(2, cache.size());
+        assertTrue(b.closed);
+        assertFalse(a.closed);
+        assertSame(a, resolve(key("a")));
+    }
+
+    @Test
+    public void closesProviderEvictedWhileInUseOnceNoLongerUsed() {
+        TestProvider evicted =
+                cache.apply(
+                        key("a"),
+                        this::create,
+                        provider -> {
+                            resolve(key("b"));
+                            resolve(key("c"));
+                            // Evicted to make room for c, but still in use here
+                            assertFalse(((TestProvider) provider).closed);
+                            return (TestProvider) provider;
+                        });
+
+        assertTrue(evicted.closed);
+        assertNotSame(evicted, resolve(key("a")));
+    }
+
+    @Test
+    public void closesInvalidatedProvider() {
+        TestProvider provider = resolve(key("a"));
+
+        cache.invalidate(key("a"));
+
+        assertTrue(provider.closed);
+        assertEquals(0, cache.size());
+    }
+
+    private TestProvider resolve(CredentialProviderKey key) {
+        return cache.apply(key, this::create, provider -> (TestProvider) provider);
+    }
+
+    private AWSCredentialsProvider create(CredentialProviderKey key) {
+        created.incrementAndGet();
+        return new TestProvider();
+    }
+
+    private static CredentialProviderKey key(String profile) {
+        return CredentialProviderKey.from(
+                Collections.singletonMap(IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY, profile));
+    }
+
+    private static final class TestProvider implements AWSCredentialsProvider, Closeable {
+        private volatile boolean closed;
+
+        @Override
+        public AWSCredentials getCredentials() {
+            return new BasicAWSCredentials("AKIDEXAMPLE", "secret");
+        }
+
+        @Override
+        public void refresh() {}
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
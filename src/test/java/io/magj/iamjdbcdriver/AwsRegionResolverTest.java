@@ -0,0 +1,113 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.regions.AwsRegionProvider;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AwsRegionResolverTest {
+
+    @Test
+    public void resolvesRegionFromRdsHostnames() {
+        assertEquals(
+                "us-east-1",
+                AwsRegionResolver.regionFromHost("mydb.abcdefghijkl.us-east-1.rds.amazonaws.com"));
+        assertEquals(
+                "eu-west-2",
+                AwsRegionResolver.regionFromHost(
+                        "mydb.cluster-ro-abcdefghijkl.eu-west-2.rds.amazonaws.com"));
+        assertEquals(
+                "ap-southeast-2",
+                AwsRegionResolver.regionFromHost(
+                        "myproxy.proxy-abcdefghijkl.ap-southeast-2.rds.amazonaws.com"));
+        assertEquals(
+                "cn-north-1",
+                AwsRegionResolver.regionFromHost(
+                        "mydb.abcdefghijkl.cn-north-1.rds.amazonaws.com.cn"));
+        assertEquals(
+                "us-gov-west-1",
+                AwsRegionResolver.regionFromHost(
+                        "mydb.abcdefghijkl.us-gov-west-1.rds.amazonaws.com"));
+        assertEquals(
+                "us-east-1",
+                AwsRegionResolver.regionFromHost("MYDB.ABCDEFGHIJKL.US-EAST-1.RDS.AMAZONAWS.COM."));
+    }
+
+    @Test
+    public void findsNoRegionInOtherHosts() {
+        assertNull(AwsRegionResolver.regionFromHost(null));
+        assertNull(AwsRegionResolver.regionFromHost("localhost"));
+        assertNull(AwsRegionResolver.regionFromHost("10.0.0.1"));
+        assertNull(AwsRegionResolver.regionFromHost("db.internal.example.com"));
+        assertNull(AwsRegionResolver.regionFromHost("us-east-1.rds.amazonaws.com.example.com"));
+    }
+
+    @Test
+    public void prefersHostRegionOverDefaultProvider() {
+        AtomicInteger lookups = new AtomicInteger();
+        AwsRegionResolver resolver =
+                new AwsRegionResolver(provider("ap-northeast-1"), lookups::incrementAndGet);
+
+        assertEquals(
+                "us-west-2",
+                resolver.resolve("mydb.abcdefghijkl.us-west-2.rds.amazonaws.com", null));
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void cachesDefaultProviderRegion() {
+        AtomicInteger lookups = new AtomicInteger();
+        AwsRegionResolver resolver =
+                new AwsRegionResolver(provider("ap-northeast-1"), lookups::incrementAndGet);
+
+        assertEquals("ap-northeast-1", resolver.resolve("localhost", null));
+        assertEquals("ap-northeast-1", resolver.resolve("db.internal.example.com", null));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void remembersDefaultProviderFailureUntilConfigFileIsNextChecked() {
+        AtomicInteger lookups = new AtomicInteger();
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        SdkClientException unavailable = new SdkClientException("No region found");
+        AwsRegionResolver resolver =
+                new AwsRegionResolver(
+                        new AwsRegionProvider() {
+                            @Override
+                            public String getRegion() {
+                                throw unavailable;
+                            }
+                        },
+                        lookups::incrementAndGet,
+                        now::get);
+
+        assertSame(unavailable, assertThrows(SdkClientException.class, () -> resolve(resolver)));
+        SdkClientException remembered =
+                assertThrows(SdkClientException.class, () -> resolve(resolver));
+        assertSame(unavailable, remembered.getCause());
+        assertEquals(1, lookups.get());
+
+        now.addAndGet(AwsRegionResolver.CONFIG_FILE_CHECK_INTERVAL_MILLIS);
+        assertSame(unavailable, assertThrows(SdkClientException.class, () -> resolve(resolver)));
+        assertEquals(2, lookups.get());
+    }
+
+    private static String resolve(AwsRegionResolver resolver) {
+        return resolver.resolve("localhost", null);
+    }
+
+    private static AwsRegionProvider provider(String region) {
+        return new AwsRegionProvider() {
+            @Override
+            public String getRegion() {
+                return region;
+            }
+        };
+    }
+}
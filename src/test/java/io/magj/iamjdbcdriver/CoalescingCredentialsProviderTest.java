@@ -0,0 +1,109 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.BasicSessionCredentials;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class CoalescingCredentialsProviderTest {
+
+    private final TestProvider delegate = new TestProvider();
+    private final SingleFlight<CredentialProviderKey, AWSCredentials> requests =
+            new SingleFlight<>();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final CoalescingCredentialsProvider provider =
+            new CoalescingCredentialsProvider(
+                    CredentialProviderKey.from(Collections.emptyMap()),
+                    delegate,
+                    requests,
+                    fetched::incrementAndGet);
+
+    @Test
+    public void sharesConcurrentCredentialRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<AWSCredentials> first = executor.submit(provider::getCredentials);
+            assertTrue(delegate.started.await(5, TimeUnit.SECONDS));
+            Future<AWSCredentials> second = executor.submit(provider::getCredentials);
+            while (requests.getCoalescedCount() == 0) {
+                Thread.sleep(1);
+            }
+            delegate.release.countDown();
+
+            assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, delegate.requests.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void reportsFetchOnlyWhenCredentialsChange() {
+        delegate.release.countDown();
+        provider.getCredentials();
+        provider.getCredentials();
+        assertEquals(1, fetched.get());
+
+        delegate.sessionToken = "session2";
+        provider.getCredentials();
+        assertEquals(2, fetched.get());
+    }
+
+    @Test
+    public void refreshesRejectedCredentialsOnceWithinInterval() {
+        delegate.release.countDown();
+        provider.getCredentials();
+
+        provider.refreshRejected(delegate.accessKeyId);
+        provider.refreshRejected(delegate.accessKeyId);
+
+        assertEquals(1, delegate.refreshes.get());
+    }
+
+    @Test
+    public void ignoresRejectionOfReplacedCredentials() {
+        delegate.release.countDown();
+        provider.getCredentials();
+
+        provider.refreshRejected("AKIDREPLACED");
+
+        assertEquals(0, delegate.refreshes.get());
+    }
+
+    private static final class TestProvider implements AWSCredentialsProvider {
+        private final AtomicInteger requests = new AtomicInteger();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger refreshes = new AtomicInteger();
+        private volatile String accessKeyId = "AKIDEXAMPLE";
+        private volatile String sessionToken = "session1";
+
+        @Override
+        public AWSCredentials getCredentials() {
+            requests.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new BasicSessionCredentials(accessKeyId, "secret", sessionToken);
+        }
+
+        @Override
+        public void refresh() {
+            refreshes.incrementAndGet();
+        }
+    }
+}
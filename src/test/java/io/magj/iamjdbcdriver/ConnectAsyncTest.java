@@ -0,0 +1,157 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectAsyncTest {
+
+    private final StubDriver delegate = IamAuthTestSupport.registerStubDriver();
+    private final IamAuthJdbcDriverWrapper wrapper = IamAuthTestSupport.wrapper();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void connectsOnExecutor() throws Exception {
+        Connection connection =
+                wrapper.connectAsync(
+                                IamAuthTestSupport.URL, IamAuthTestSupport.properties(), executor)
+                        .get(5, TimeUnit.SECONDS);
+
+        StubDriver.Connect connect = StubDriver.recorded(connection);
+        assertEquals("jdbc:stub://" + IamAuthTestSupport.HOST + ":5432/app", connect.url);
+        assertTrue(
+                IamAuthTestSupport.isToken(
+                        connect.password, IamAuthTestSupport.HOST, IamAuthTestSupport.PORT));
+    }
+
+    @Test
+    public void generatesTokenOnTokenExecutor() throws Exception {
+        String token =
+                wrapper.generateRdsIamAuthTokenAsync(
+                                IamAuthTestSupport.HOST,
+                                IamAuthTestSupport.PORT,
+                                IamAuthTestSupport.propertyMap())
+                        .get(5, TimeUnit.SECONDS);
+
+        assertTrue(
+                IamAuthTestSupport.isToken(
+                        token, IamAuthTestSupport.HOST, IamAuthTestSupport.PORT));
+    }
+
+    @Test
+    public void generatesTokenWithoutWrapperOnGivenExecutor() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+
+        String token =
+                IamAuthJdbcDriverWrapper.generateRdsIamAuthTokenAsync(
+                                IamAuthTestSupport.HOST,
+                                IamAuthTestSupport.PORT,
+                                "other_user",
+                                IamAuthTestSupport.propertyMap(),
+                                command -> {
+                                    executions.incrementAndGet();
+                                    executor.execute(command);
+                                })
+                        .get(5, TimeUnit.SECONDS);
+
+        assertTrue(
+                token.startsWith(
+                        IamAuthTestSupport.HOST + ":" + IamAuthTestSupport.PORT + "/?"));
+        assertTrue(token, token.contains("DBUser=other_user"));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void failsWithSqlExceptionForUnacceptedUrl() {
+        ExecutionException failure =
+                assertThrows(
+                        ExecutionException.class,
+                        () ->
+                                wrapper.connectAsync(
+                                                "jdbc:other://localhost/app",
+                                                IamAuthTestSupport.properties(),
+                                                executor)
+                                        .get(5, TimeUnit.SECONDS));
+
+        assertTrue(failure.getCause() instanceof SQLException);
+    }
+
+    @Test
+    public void warmsUpConnectionsSharingOneToken() throws Exception {
+        List<Connection> connections =
+                wrapper.warmUp(IamAuthTestSupport.URL, IamAuthTestSupport.properties(), 5, executor)
+                        .get(5, TimeUnit.SECONDS);
+
+        assertEquals(5, connections.size());
+        Set<String> tokens = new HashSet<>();
+        for (Connection connection : connections) {
+            tokens.add(StubDriver.recorded(connection).password);
+        }
+        assertEquals(1, tokens.size());
+        assertEquals(5, delegate.getConnectCount());
+    }
+
+    @Test
+    public void closesOpenedConnectionsWhenWarmUpFails() throws Exception {
+        SQLException refused = new SQLException("Connection refused", "08001");
+        AtomicInteger connects = new AtomicInteger();
+        Set<StubDriver.Connect> opened = ConcurrentHashMap.newKeySet();
+        delegate.onConnect(
+                connect -> {
+                    if (connects.incrementAndGet() == 3) {
+                        throw refused;
+                    }
+                    opened.add(connect);
+                });
+
+        ExecutionException failure =
+                assertThrows(
+                        ExecutionException.class,
+                        () ->
+                                wrapper.warmUp(
+                                                IamAuthTestSupport.URL,
+                                                IamAuthTestSupport.properties(),
+                                                5,
+                                                executor)
+                                        .get(5, TimeUnit.SECONDS));
+
+        assertSame(refused, failure.getCause());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (opened.size() < 4 || !opened.stream().allMatch(StubDriver.Connect::isClosed)) {
+            assertTrue("Opened connections not closed", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void copiesPropertiesBeforeConnecting() throws Exception {
+        Properties properties = IamAuthTestSupport.properties();
+        Properties before = (Properties) properties.clone();
+
+        wrapper.connectAsync(IamAuthTestSupport.URL, properties, executor)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(before, properties);
+    }
+}
@@ -0,0 +1,199 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class ConnectRateLimiterTest {
+
+    private static final long NO_WAIT = 0;
+    private static final long LONG_WAIT = TimeUnit.SECONDS.toNanos(5);
+
+    private final IamAuthMetrics metrics =
+            new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>());
+    private final ConnectRateLimiter limiter = new ConnectRateLimiter(metrics);
+    private final List<Thread> threads = new ArrayList<>();
+
+    @After
+    public void interruptThreads() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    @Test
+    public void allowsBurstWithoutWaiting() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.acquire("db1", 1, 3, NO_WAIT));
+        }
+        assertFalse(limiter.acquire("db1", 1, 3, NO_WAIT));
+
+        // Each endpoint has a bucket of its own
+        assertTrue(limiter.acquire("db2", 1, 3, NO_WAIT));
+        assertEquals(4, metrics.getConnectRateLimitWaitCount());
+        assertEquals(1, metrics.getConnectRateLimitRejections());
+    }
+
+    @Test
+    public void waitsForPermitAtLimitedRate() throws Exception {
+        assertTrue(limiter.acquire("db1", 20, 1, NO_WAIT));
+
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire("db1", 20, 1, LONG_WAIT));
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void rejectsWithoutReservingWhenWaitWouldBeTooLong() throws Exception {
+        assertTrue(limiter.acquire("db1", 10, 1, NO_WAIT));
+
+        long start = System.nanoTime();
+        assertFalse(limiter.acquire("db1", 10, 1, TimeUnit.MILLISECONDS.toNanos(50)));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, metrics.getConnectRateLimitRejections());
+
+        // The next permit is still 100ms away, not 200ms, as the rejected caller reserved nothing
+        assertTrue(limiter.acquire("db1", 10, 1, TimeUnit.MILLISECONDS.toNanos(150)));
+    }
+
+    @Test
+    public void servesWaitingCallersInOrder() throws Exception {
+        assertTrue(limiter.acquire("db1", 20, 1, NO_WAIT));
+        List<Integer> permitted = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int caller = i;
+            Thread thread =
+                    start(
+                            () -> {
+                                if (limiter.acquire("db1", 20, 1, LONG_WAIT)) {
+                                    permitted.add(caller);
+                                }
+                            },
+                            null);
+            // Reserves its permit before parking, so the next caller reserves after it
+            awaitParked(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), permitted);
+    }
+
+    @Test
+    public void throwsWhenInterruptedWhileWaiting() throws Exception {
+        assertTrue(limiter.acquire("db1", 1, 1, NO_WAIT));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = start(() -> limiter.acquire("db1", 1, 1, LONG_WAIT), failure);
+        awaitParked(thread);
+
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertTrue(failure.get() instanceof InterruptedException);
+    }
+
+    @Test
+    public void forgetsFullBucketsBeyondMaxEndpoints() throws Exception {
+        // Stays empty for a second, so is not forgotten
+        assertTrue(limiter.acquire("busy", 1, 1, NO_WAIT));
+        for (int i = 1; i < ConnectRateLimiter.MAX_ENDPOINTS; i++) {
+            assertTrue(limiter.acquire("idle" + i, 1_000_000, 1, NO_WAIT));
+        }
+        assertEquals(ConnectRateLimiter.MAX_ENDPOINTS, limiter.size());
+        Thread.sleep(1);
+
+        assertTrue(limiter.acquire("new", 1_000_000, 1, NO_WAIT));
+
+        assertEquals(2, limiter.size());
+        assertFalse(limiter.acquire("busy", 1, 1, NO_WAIT));
+    }
+
+    @Test
+    public void neverExceedsRateWhileForgettingBuckets() throws Exception {
+        long permitsPerSecond = 100;
+        long durationNanos = TimeUnit.MILLISECONDS.toNanos(500);
+        AtomicInteger permits = new AtomicInteger();
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(9);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            // Keeps the limiter beyond its endpoint limit, forgetting full buckets
+            tasks.add(
+                    executor.submit(
+                            () -> {
+                                for (long i = 0; !stop.get(); i++) {
+                                    limiter.acquire("other" + i, 1_000_000, 1, NO_WAIT);
+                                }
+                                return null;
+                            }));
+            long start = System.nanoTime();
+            for (int i = 0; i < 8; i++) {
+                tasks.add(
+                        executor.submit(
+                                () -> {
+                                    while (System.nanoTime() - start < durationNanos) {
+                                        if (limiter.acquire("db1", permitsPerSecond, 1, NO_WAIT)) {
+                                            permits.incrementAndGet();
+                                        }
+                                    }
+                                    return null;
+                                }));
+            }
+            for (Future<?> task : tasks.subList(1, tasks.size())) {
+                task.get(5, TimeUnit.SECONDS);
+            }
+            stop.set(true);
+            tasks.get(0).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The burst, and one permit per interval after it
+        long allowed = 1 + TimeUnit.NANOSECONDS.toSeconds(durationNanos * permitsPerSecond) + 1;
+        assertTrue(permits.get() + " permits", permits.get() <= allowed);
+    }
+
+    /** Runs the action on a new thread, recording what it throws. */
+    private Thread start(Interruptible action, AtomicReference<Throwable> failure) {
+        Thread thread =
+                new Thread(
+                        () -> {
+                            try {
+                                action.run();
+                            } catch (Throwable e) {
+                                if (failure != null) {
+                                    failure.set(e);
+                                }
+                            }
+                        });
+        threads.add(thread);
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitParked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            assertTrue("Thread not parked", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    private interface Interruptible {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,64 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Driver;
+import java.sql.SQLException;
+import org.junit.Test;
+
+public class DelegateDriverRegistryTest {
+
+    private final DelegateDriverRegistry registry = new DelegateDriverRegistry();
+
+    @Test
+    public void instantiatesEachDriverClassOnce() throws SQLException {
+        Driver first = registry.resolve(StubDriver.class.getName(), null);
+        Driver second = registry.resolve(StubDriver.class.getName(), null);
+
+        assertTrue(first instanceof StubDriver);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void resolvesBySchemeOnceResolvedByClassName() throws SQLException {
+        assertNull(registry.resolve(null, "stub"));
+
+        Driver driver = registry.resolve(StubDriver.class.getName(), "stub");
+
+        assertSame(driver, registry.resolve(null, "stub"));
+    }
+
+    @Test
+    public void usesRegisteredDriverInsteadOfLoadingOne() throws SQLException {
+        StubDriver registered = new StubDriver();
+        registry.register("stub", registered);
+
+        assertSame(registered, registry.resolve(StubDriver.class.getName(), null));
+        assertSame(registered, registry.resolve(null, "stub"));
+
+        StubDriver replacement = new StubDriver();
+        registry.register(null, replacement);
+        assertSame(replacement, registry.resolve(null, "stub"));
+    }
+
+    @Test
+    public void resolvesWellKnownDelegatesByScheme() throws SQLException {
+        Driver driver =
+                registry.resolve(null, PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_SCHEME_NAME);
+
+        assertEquals(
+                PostgreSqlIamAuthJdbcDriverWrapper.DELEGATE_DRIVER_CLASS_NAME,
+                driver.getClass().getName());
+        assertNull(registry.resolve(null, null));
+    }
+
+    @Test
+    public void failsToResolveMissingDriverClass() {
+        assertThrows(
+                SQLException.class, () -> registry.resolve("com.example.MissingDriver", null));
+    }
+}
@@ -0,0 +1,202 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import org.junit.Test;
+
+public class IamAuthDataSourceTest {
+
+    private final StubDriver delegate = IamAuthTestSupport.registerStubDriver();
+    private final AtomicInteger prepares = new AtomicInteger();
+    private final IamAuthDataSource dataSource = dataSource();
+
+    @Test
+    public void connectsWithToken() throws Exception {
+        StubDriver.Connect connect = StubDriver.recorded(dataSource.getConnection());
+
+        assertEquals("jdbc:stub://" + IamAuthTestSupport.HOST + ":5432/app", connect.url);
+        assertEquals(IamAuthTestSupport.USER, connect.user);
+        assertTrue(
+                IamAuthTestSupport.isToken(
+                        connect.password, IamAuthTestSupport.HOST, IamAuthTestSupport.PORT));
+    }
+
+    @Test
+    public void reusesPreparedConnectUntilSettingsChange() throws Exception {
+        dataSource.getConnection();
+        dataSource.getConnection();
+        assertEquals(1, prepares.get());
+
+        dataSource.setAwsRegion("us-west-2");
+        dataSource.getConnection();
+        dataSource.getConnection();
+        assertEquals(2, prepares.get());
+
+        dataSource.setLoginTimeout(5);
+        dataSource.getConnection();
+        assertEquals(3, prepares.get());
+
+        dataSource.setUrl(IamAuthTestSupport.url(IamAuthTestSupport.HOST + ":5433"));
+        StubDriver.Connect connect = StubDriver.recorded(dataSource.getConnection());
+        assertEquals(4, prepares.get());
+        assertEquals("jdbc:stub://" + IamAuthTestSupport.HOST + ":5433/app", connect.url);
+    }
+
+    @Test
+    public void passesLoginTimeoutAsProperty() throws Exception {
+        dataSource.setLoginTimeout(5);
+        assertEquals(
+                "5",
+                StubDriver.recorded(dataSource.getConnection())
+                        .properties
+                        .getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY));
+
+        // The property takes precedence
+        dataSource.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "2");
+        assertEquals(
+                "2",
+                StubDriver.recorded(dataSource.getConnection())
+                        .properties
+                        .getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY));
+    }
+
+    @Test
+    public void connectsAsOtherUserWithTheirOwnToken() throws Exception {
+        StubDriver.Connect connect =
+                StubDriver.recorded(dataSource.getConnection("other_user", "ignored"));
+
+        assertEquals("other_user", connect.user);
+        assertTrue(connect.password.contains("DBUser=other_user"));
+        // The configured user's connect is left prepared
+        assertEquals(IamAuthTestSupport.USER, dataSource.getUser());
+        int prepared = prepares.get();
+        dataSource.getConnection(IamAuthTestSupport.USER, "ignored");
+        assertEquals(prepared, prepares.get());
+    }
+
+    @Test
+    public void failsWithoutUrl() {
+        dataSource.setUrl(null);
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+    }
+
+    @Test
+    public void failsEachConnectWithItsOwnExceptionWhenTokenRequestIsInvalid() {
+        dataSource.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_SIGNER_PROPERTY, "other");
+
+        SQLException first = assertThrows(SQLException.class, dataSource::getConnection);
+        SQLException second = assertThrows(SQLException.class, dataSource::getConnection);
+
+        assertFalse(first.getCause() == second.getCause());
+        assertSame(first.getCause().getCause(), second.getCause().getCause());
+        assertTrue(first.getCause().getCause() instanceof IllegalArgumentException);
+        assertEquals(0, delegate.getConnectCount());
+    }
+
+    @Test
+    public void notifiesPoolWhenLogicalConnectionClosed() throws Exception {
+        PooledConnection pooledConnection = dataSource.getPooledConnection();
+        List<ConnectionEvent> closed = new ArrayList<>();
+        pooledConnection.addConnectionEventListener(recording(closed, new ArrayList<>()));
+
+        Connection connection = pooledConnection.getConnection();
+        connection.close();
+        connection.close();
+
+        assertEquals(1, closed.size());
+        assertSame(pooledConnection, closed.get(0).getSource());
+        assertTrue(connection.isClosed());
+        assertFalse(delegate.getLastConnect().isClosed());
+
+        pooledConnection.close();
+        assertTrue(delegate.getLastConnect().isClosed());
+    }
+
+    @Test
+    public void notifiesPoolOfConnectionErrorsOnly() throws Exception {
+        SQLException broken = new SQLException("Connection reset", "08006");
+        SQLException syntax = new SQLException("Syntax error", "42601");
+        Connection physicalConnection =
+                (Connection)
+                        Proxy.newProxyInstance(
+                                IamAuthDataSourceTest.class.getClassLoader(),
+                                new Class<?>[] {Connection.class},
+                                (proxy, method, args) -> {
+                                    throw "commit".equals(method.getName()) ? broken : syntax;
+                                });
+        PooledConnection pooledConnection = new IamAuthPooledConnection(physicalConnection);
+        List<ConnectionEvent> errors = new ArrayList<>();
+        pooledConnection.addConnectionEventListener(recording(new ArrayList<>(), errors));
+        Connection connection = pooledConnection.getConnection();
+
+        assertSame(syntax, assertThrows(SQLException.class, connection::rollback));
+        assertEquals(0, errors.size());
+
+        assertSame(broken, assertThrows(SQLException.class, connection::commit));
+        assertEquals(1, errors.size());
+        assertSame(broken, errors.get(0).getSQLException());
+    }
+
+    @Test
+    public void closesPreviousLogicalConnection() throws Exception {
+        PooledConnection pooledConnection = dataSource.getPooledConnection();
+
+        Connection first = pooledConnection.getConnection();
+        Connection second = pooledConnection.getConnection();
+
+        assertTrue(first.isClosed());
+        assertFalse(second.isClosed());
+        assertThrows(SQLException.class, first::commit);
+    }
+
+    /** A data source connecting through a wrapper that counts how often connects are prepared. */
+    private IamAuthDataSource dataSource() {
+        IamAuthDataSource dataSource = new IamAuthDataSource(IamAuthTestSupport.URL);
+        dataSource.setDriver(
+                new IamAuthJdbcDriverWrapper(
+                        IamAuthTestSupport.WRAPPER_SCHEME_NAME,
+                        IamAuthTestSupport.DELEGATE_SCHEME_NAME,
+                        IamAuthTestSupport.PORT,
+                        StubDriver.class.getName(),
+                        false) {
+                    @Override
+                    PreparedConnect prepare(String url, Properties connectionProperties)
+                            throws SQLException {
+                        prepares.incrementAndGet();
+                        return super.prepare(url, connectionProperties);
+                    }
+                });
+        dataSource.setProperties(IamAuthTestSupport.properties());
+        return dataSource;
+    }
+
+    private static ConnectionEventListener recording(
+            List<ConnectionEvent> closed, List<ConnectionEvent> errors) {
+        return new ConnectionEventListener() {
+            @Override
+            public void connectionClosed(ConnectionEvent event) {
+                closed.add(event);
+            }
+
+            @Override
+            public void connectionErrorOccurred(ConnectionEvent event) {
+                errors.add(event);
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class IamAuthMetricsTest {
+
+    private final IamAuthMetrics metrics =
+            new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>());
+
+    @Test
+    public void countsEventsAndForwardsThemToListeners() {
+        List<String> events = new ArrayList<>();
+        metrics.addListener(recording(events));
+
+        metrics.tokenCacheHit();
+        metrics.defaultProviderChainResolved();
+        metrics.tokenSigned(2_000);
+        metrics.delegateConnected(5_000, false);
+
+        assertEquals(1, metrics.getTokenCacheHits());
+        assertEquals(1, metrics.getDefaultProviderChainResolutions());
+        assertEquals(1, metrics.getTokenSigningCount());
+        assertEquals(1, metrics.getDelegateConnectFailures());
+        assertEquals(
+                Arrays.asList(
+                        "tokenCacheHit",
+                        "defaultProviderChainResolved",
+                        "tokenSigned 2000",
+                        "delegateConnected 5000 false"),
+                events);
+    }
+
+    @Test
+    public void callsRemainingListenersWhenOneThrows() {
+        List<String> events = new ArrayList<>();
+        metrics.addListener(
+                new IamAuthMetricsListener() {
+                    @Override
+                    public void tokenCacheMiss() {
+                        throw new IllegalStateException("Listener failed");
+                    }
+                });
+        metrics.addListener(recording(events));
+
+        metrics.tokenCacheMiss();
+
+        assertEquals(Collections.singletonList("tokenCacheMiss"), events);
+        assertEquals(1, metrics.getTokenCacheMisses());
+    }
+
+    @Test
+    public void stopsCallingRemovedListeners() {
+        List<String> events = new ArrayList<>();
+        IamAuthMetricsListener listener = recording(events);
+        metrics.addListener(listener);
+        metrics.removeListener(listener);
+
+        metrics.tokenCacheHit();
+
+        assertEquals(0, events.size());
+    }
+
+    private static IamAuthMetricsListener recording(List<String> events) {
+        return new IamAuthMetricsListener() {
+            @Override
+            public void tokenCacheHit() {
+                events.add("tokenCacheHit");
+            }
+
+            @Override
+            public void tokenCacheMiss() {
+                events.add("tokenCacheMiss");
+            }
+
+            @Override
+            public void defaultProviderChainResolved() {
+                events.add("defaultProviderChainResolved");
+            }
+
+            @Override
+            public void tokenSigned(long durationNanos) {
+                events.add("tokenSigned " + durationNanos);
+            }
+
+            @Override
+            public void delegateConnected(long durationNanos, boolean successful) {
+                events.add("delegateConnected " + durationNanos + " " + successful);
+            }
+        };
+    }
+}
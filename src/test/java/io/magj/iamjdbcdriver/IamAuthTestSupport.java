@@ -0,0 +1,74 @@
+package io.magj.iamjdbcdriver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Connects through a wrapper for the {@code jdbc:iamstub:} scheme to a {@link StubDriver} for the
+ * {@code jdbc:stub:} scheme, signing tokens with static credentials so that no AWS calls are made.
+ */
+final class IamAuthTestSupport {
+
+    static final String WRAPPER_SCHEME_NAME = "iamstub";
+    static final String DELEGATE_SCHEME_NAME = "stub";
+    static final String HOST = "db1.abcdefghijkl.us-east-1.rds.amazonaws.com";
+    static final int PORT = 5432;
+    static final String URL = url(HOST + ":" + PORT);
+    static final String USER = "iam_user";
+
+    private IamAuthTestSupport() {}
+
+    /** Registers a new stub as the delegate for wrappers returned by {@link #wrapper()}. */
+    static StubDriver registerStubDriver() {
+        StubDriver delegate = new StubDriver(DELEGATE_SCHEME_NAME);
+        IamAuthJdbcDriverWrapper.registerDelegateDriver(DELEGATE_SCHEME_NAME, delegate);
+        return delegate;
+    }
+
+    static IamAuthJdbcDriverWrapper wrapper() {
+        return new IamAuthJdbcDriverWrapper(
+                WRAPPER_SCHEME_NAME,
+                DELEGATE_SCHEME_NAME,
+                PORT,
+                StubDriver.class.getName(),
+                false);
+    }
+
+    static String url(String authority) {
+        return "jdbc:" + WRAPPER_SCHEME_NAME + "://" + authority + "/app";
+    }
+
+    /** Properties that sign tokens with static credentials, without caching them. */
+    static Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY, USER);
+        properties.setProperty(IamAuthJdbcDriverWrapper.AWS_ACCESS_KEY_ID_PROPERTY, "AKIDEXAMPLE");
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY,
+                "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+        properties.setProperty(IamAuthJdbcDriverWrapper.AWS_REGION_PROPERTY, "us-east-1");
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY, "false");
+        properties.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_FAIL_FAST_PROPERTY, "true");
+        return properties;
+    }
+
+    /** The same properties as {@link #properties()}, as taken by the token generation methods. */
+    static Map<String, String> propertyMap() {
+        Properties properties = properties();
+        Map<String, String> map = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+        return map;
+    }
+
+    /** Whether the password is an RDS IAM auth token for the host. */
+    static boolean isToken(String password, String host, int port) {
+        return password != null
+                && password.startsWith(host + ":" + port + "/?")
+                && password.contains("DBUser=" + USER)
+                && password.contains("X-Amz-Signature=");
+    }
+}
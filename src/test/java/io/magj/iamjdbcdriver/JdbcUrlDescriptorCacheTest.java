@@ -0,0 +1,83 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class JdbcUrlDescriptorCacheTest {
+
+    private static final String WRAPPER_PREFIX = "jdbc:iampostgresql:";
+
+    private final JdbcUrlDescriptorCache cache = new JdbcUrlDescriptorCache(2);
+
+    @Test
+    public void returnsCachedDescriptor() {
+        JdbcUrlDescriptor descriptor = parse("jdbc:iampostgresql://db1:5432/app");
+        cache.put(descriptor, "password");
+
+        assertSame(descriptor, cache.get("jdbc:iampostgresql://db1:5432/app"));
+    }
+
+    @Test
+    public void evictsDescriptorsNotUsedSinceTheyWereCachedWhenFull() {
+        cache.put(parse("jdbc:iampostgresql://db1/app"));
+        cache.put(parse("jdbc:iampostgresql://db2/app"));
+        cache.get("jdbc:iampostgresql://db1/app");
+        cache.put(parse("jdbc:iampostgresql://db3/app"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("jdbc:iampostgresql://db1/app"));
+        assertNull(cache.get("jdbc:iampostgresql://db2/app"));
+        assertNotNull(cache.get("jdbc:iampostgresql://db3/app"));
+    }
+
+    @Test
+    public void settlesAtMaxSizeAfterConcurrentPuts() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String url = "jdbc:iampostgresql://db" + i + "/app";
+                puts.add(
+                        executor.submit(
+                                () -> {
+                                    cache.put(parse(url));
+                                    cache.get(url);
+                                }));
+            }
+            for (Future<?> put : puts) {
+                put.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        cache.put(parse("jdbc:iampostgresql://newest/app"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("jdbc:iampostgresql://newest/app"));
+    }
+
+    @Test
+    public void doesNotCacheUrlsCarryingSecrets() {
+        cache.put(parse("jdbc:iampostgresql://db1/app?password=hunter2"), "password");
+        cache.put(
+                parse("jdbc:iampostgresql://db1/app?awsAccessKeyId=AKID&awsSecretAccessKey=s"),
+                "password",
+                IamAuthJdbcDriverWrapper.AWS_SECRET_ACCESS_KEY_PROPERTY);
+
+        assertEquals(0, cache.size());
+    }
+
+    private static JdbcUrlDescriptor parse(String url) {
+        return JdbcUrlDescriptor.parse(url, WRAPPER_PREFIX, "postgresql");
+    }
+}
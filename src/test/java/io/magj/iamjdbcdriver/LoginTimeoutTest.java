@@ -0,0 +1,265 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class LoginTimeoutTest {
+
+    private static final AtomicInteger HOSTS = new AtomicInteger();
+
+    /** A host of its own, so that no other test shares its cached token or circuit breaker. */
+    private final String host =
+            "timeout" + HOSTS.incrementAndGet() + ".abcdefghijkl.us-east-1.rds.amazonaws.com";
+
+    private final StubDriver delegate = new StubDriver();
+    private final List<Socket> stsConnections = new CopyOnWriteArrayList<>();
+    private ServerSocket sts;
+
+    @After
+    public void reset() throws IOException {
+        DriverManager.setLoginTimeout(0);
+        IamAuthTokenGenerator.setStsClientFactory(null);
+        if (sts != null) {
+            // Fails the hung STS requests, freeing the token threads waiting on them
+            sts.close();
+            for (Socket connection : stsConnections) {
+                connection.close();
+            }
+        }
+    }
+
+    @Test
+    public void hungCredentialLookupFailsWithinLoginTimeout() throws Exception {
+        Properties properties = hungCredentialProperties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "2");
+
+        assertTimesOutWithin(2000, properties);
+    }
+
+    @Test
+    public void hungCredentialLookupFailsWithinDriverManagerLoginTimeout() throws Exception {
+        Properties properties = hungCredentialProperties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "30");
+        DriverManager.setLoginTimeout(2);
+
+        assertTimesOutWithin(2000, properties);
+    }
+
+    @Test
+    public void passesRemainingLoginTimeoutToPostgreSqlInSeconds() throws Exception {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "10");
+
+        String loginTimeout =
+                connect("postgresql", properties)
+                        .getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY);
+
+        assertTrue(loginTimeout, loginTimeout.matches("\\d+\\.\\d{3}"));
+        assertBetween(9, 10, Double.parseDouble(loginTimeout));
+        // The caller's properties are left as they were
+        assertEquals("10", properties.getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY));
+    }
+
+    @Test
+    public void passesRemainingLoginTimeoutToMySqlAsConnectTimeoutInMillis() throws Exception {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty("connectTimeout", "10000");
+
+        String connectTimeout = connect("mysql", properties).getProperty("connectTimeout");
+
+        assertTrue(connectTimeout, connectTimeout.matches("\\d+"));
+        assertBetween(9000, 10000, Long.parseLong(connectTimeout));
+
+        // The login timeout is in seconds, and applies when it is the smaller
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "5");
+        connectTimeout = connect("mysql", properties).getProperty("connectTimeout");
+        assertBetween(4000, 5000, Long.parseLong(connectTimeout));
+    }
+
+    @Test
+    public void smallerOfPropertyAndDriverManagerLoginTimeoutApplies() throws Exception {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "30");
+        DriverManager.setLoginTimeout(5);
+
+        assertBetween(4, 5, postgreSqlLoginTimeout(properties));
+
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "2");
+
+        assertBetween(1, 2, postgreSqlLoginTimeout(properties));
+    }
+
+    @Test
+    public void failsWithoutConnectingWhenEveryTokenThreadIsBusy() throws Exception {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "5");
+        // Even when allowed to continue without a token
+        properties.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_FAIL_FAST_PROPERTY, "false");
+        CountDownLatch release = new CountDownLatch(1);
+        ThreadPoolExecutor tokenExecutor =
+                new ThreadPoolExecutor(
+                        1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        try {
+            fill(tokenExecutor, release);
+            IamAuthJdbcDriverWrapper.registerDelegateDriver(null, delegate);
+            IamAuthJdbcDriverWrapper wrapper =
+                    new IamAuthJdbcDriverWrapper(
+                            "iampostgresql",
+                            "postgresql",
+                            5432,
+                            StubDriver.class.getName(),
+                            false) {
+                        @Override
+                        Executor tokenExecutor() {
+                            return tokenExecutor;
+                        }
+                    };
+
+            SQLTransientException failure =
+                    assertThrows(
+                            SQLTransientException.class,
+                            () -> wrapper.connect(url("postgresql"), properties));
+
+            assertEquals("08001", failure.getSQLState());
+            assertTrue(failure.getCause() instanceof RejectedExecutionException);
+            assertEquals(0, delegate.getConnectCount());
+        } finally {
+            release.countDown();
+            tokenExecutor.shutdown();
+        }
+    }
+
+    /** Connects to a host whose token can't be generated, checking the connect gives up in time. */
+    private void assertTimesOutWithin(long budgetMillis, Properties properties) {
+        IamAuthJdbcDriverWrapper wrapper = wrapper("postgresql");
+        long start = System.nanoTime();
+
+        SQLTimeoutException failure =
+                assertThrows(
+                        SQLTimeoutException.class,
+                        () -> wrapper.connect(url("postgresql"), properties));
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals("08001", failure.getSQLState());
+        // Waited for the token until around the login timeout, rather than for the hung lookup,
+        // with loose bounds, as the connect is timed by the wall clock on a possibly busy machine
+        assertTrue(
+                elapsedMillis + "ms",
+                elapsedMillis >= budgetMillis / 2 && elapsedMillis < budgetMillis + 5000);
+        assertEquals(0, delegate.getConnectCount());
+    }
+
+    /**
+     * Properties that assume a role through an STS stand-in that accepts connections, but never
+     * responds, so that credential lookups hang.
+     */
+    private Properties hungCredentialProperties() throws IOException {
+        sts = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor =
+                new Thread(
+                        () -> {
+                            try {
+                                while (true) {
+                                    stsConnections.add(sts.accept());
+                                }
+                            } catch (IOException e) {
+                                // Closed
+                            }
+                        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        String endpoint = "http://127.0.0.1:" + sts.getLocalPort();
+        IamAuthTokenGenerator.setStsClientFactory(
+                credentials ->
+                        AWSSecurityTokenServiceClientBuilder.standard()
+                                .withEndpointConfiguration(
+                                        new AwsClientBuilder.EndpointConfiguration(
+                                                endpoint, "us-east-1"))
+                                .withCredentials(credentials)
+                                .build());
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.AWS_STS_CREDENTIAL_ROLE_ARN_PROPERTY,
+                "arn:aws:iam::123456789012:role/" + host.substring(0, host.indexOf('.')));
+        return properties;
+    }
+
+    /** Occupies every thread of the executor, and every place in its queue, until released. */
+    private static void fill(ExecutorService executor, CountDownLatch release) {
+        try {
+            while (true) {
+                executor.execute(
+                        () -> {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+            }
+        } catch (RejectedExecutionException e) {
+            // Full
+        }
+    }
+
+    private double postgreSqlLoginTimeout(Properties properties) throws SQLException {
+        return Double.parseDouble(
+                connect("postgresql", properties)
+                        .getProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY));
+    }
+
+    /** Connects to the delegate for the scheme, returning the properties it was given. */
+    private Properties connect(String delegateSchemeName, Properties properties)
+            throws SQLException {
+        return StubDriver.recorded(
+                        wrapper(delegateSchemeName).connect(url(delegateSchemeName), properties))
+                .properties;
+    }
+
+    /**
+     * A wrapper connecting to the stub through a {@code jdbc:postgresql:} or {@code jdbc:mysql:}
+     * URL, as the delegate's timeout property depends on the scheme.
+     */
+    private IamAuthJdbcDriverWrapper wrapper(String delegateSchemeName) {
+        IamAuthJdbcDriverWrapper.registerDelegateDriver(null, delegate);
+        return new IamAuthJdbcDriverWrapper(
+                "iam" + delegateSchemeName,
+                delegateSchemeName,
+                5432,
+                StubDriver.class.getName(),
+                false);
+    }
+
+    private String url(String delegateSchemeName) {
+        return "jdbc:iam" + delegateSchemeName + "://" + host + ":5432/app";
+    }
+
+    private static void assertBetween(double min, double max, double actual) {
+        assertTrue(min + " <= " + actual + " <= " + max, min <= actual && actual <= max);
+    }
+}
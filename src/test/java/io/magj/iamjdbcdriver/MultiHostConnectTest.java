@@ -0,0 +1,199 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+
+public class MultiHostConnectTest {
+
+    private static final String HOST_2 = "db2.abcdefghijkl.us-east-1.rds.amazonaws.com";
+    private static final String URL =
+            IamAuthTestSupport.url(IamAuthTestSupport.HOST + ":5432," + HOST_2 + ":5433");
+
+    private final StubDriver delegate = IamAuthTestSupport.registerStubDriver();
+    private final IamAuthJdbcDriverWrapper wrapper = IamAuthTestSupport.wrapper();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void releaseHungConnects() {
+        release.countDown();
+    }
+
+    @Test
+    public void connectsToNextHostWithItsOwnToken() throws Exception {
+        delegate.onConnect(
+                connect -> {
+                    if (connect.url.contains(IamAuthTestSupport.HOST)) {
+                        throw new SQLException("Connection refused", "08001");
+                    }
+                });
+
+        Connection connection = wrapper.connect(URL, IamAuthTestSupport.properties());
+
+        StubDriver.Connect connect = StubDriver.recorded(connection);
+        assertEquals("jdbc:stub://" + HOST_2 + ":5433/app", connect.url);
+        assertTrue(IamAuthTestSupport.isToken(connect.password, HOST_2, 5433));
+        assertEquals(2, delegate.getConnectCount());
+    }
+
+    @Test
+    public void generatesEveryTokenBeforeTryingFirstHost() throws Exception {
+        CountDownLatch signed = new CountDownLatch(2);
+        IamAuthMetricsListener listener =
+                new IamAuthMetricsListener() {
+                    @Override
+                    public void tokenSigned(long durationNanos) {
+                        signed.countDown();
+                    }
+                };
+        IamAuthJdbcDriverWrapper.addMetricsListener(listener);
+        try {
+            // The first host connects, but only once the second host's token is signed too
+            delegate.onConnect(connect -> await(signed));
+
+            Connection connection = wrapper.connect(URL, IamAuthTestSupport.properties());
+
+            assertEquals(0, signed.getCount());
+            assertEquals(
+                    "jdbc:stub://" + IamAuthTestSupport.HOST + ":5432/app",
+                    StubDriver.recorded(connection).url);
+            assertEquals(1, delegate.getConnectCount());
+        } finally {
+            IamAuthJdbcDriverWrapper.removeMetricsListener(listener);
+        }
+    }
+
+    @Test
+    public void chainsFailuresOfEveryHost() {
+        SQLException refused = new SQLException("Connection refused", "08001");
+        delegate.onConnect(
+                connect -> {
+                    throw refused;
+                });
+
+        SQLException failure =
+                assertThrows(
+                        SQLException.class,
+                        () -> wrapper.connect(URL, IamAuthTestSupport.properties()));
+
+        assertEquals("08001", failure.getSQLState());
+        assertSame(refused, failure.getCause());
+    }
+
+    @Test
+    public void racesPastHostThatThrowsUnchecked() throws Exception {
+        delegate.onConnect(
+                connect -> {
+                    if (connect.url.contains(IamAuthTestSupport.HOST)) {
+                        throw new IllegalStateException("Driver bug");
+                    }
+                });
+
+        Connection connection = wrapper.connect(URL, raceProperties());
+
+        StubDriver.Connect connect = StubDriver.recorded(connection);
+        assertEquals("jdbc:stub://" + HOST_2 + ":5433/app", connect.url);
+        assertTrue(IamAuthTestSupport.isToken(connect.password, HOST_2, 5433));
+    }
+
+    @Test
+    public void failsRaceWhenEveryHostThrowsUnchecked() {
+        delegate.onConnect(
+                connect -> {
+                    throw new IllegalStateException("Driver bug");
+                });
+
+        SQLException failure =
+                assertThrows(SQLException.class, () -> wrapper.connect(URL, raceProperties()));
+
+        assertEquals("08001", failure.getSQLState());
+        assertTrue(failure.getCause().getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void closesConnectionsThatLoseRace() throws Exception {
+        Set<StubDriver.Connect> opened = ConcurrentHashMap.newKeySet();
+        delegate.onConnect(
+                connect -> {
+                    opened.add(connect);
+                    if (connect.url.contains(HOST_2)) {
+                        await(release);
+                    }
+                });
+
+        Connection connection = wrapper.connect(URL, raceProperties());
+        release.countDown();
+
+        assertEquals(
+                "jdbc:stub://" + IamAuthTestSupport.HOST + ":5432/app",
+                StubDriver.recorded(connection).url);
+        waitUntil(() -> opened.size() == 2);
+        StubDriver.Connect loser =
+                opened.stream().filter(connect -> connect.url.contains(HOST_2)).findAny().get();
+        waitUntil(loser::isClosed);
+    }
+
+    @Test
+    public void failsRaceWithTimeoutAndClosesLateConnections() throws Exception {
+        // Signs once up front, so that the first signing is not what runs out of time. Connecting
+        // instead could leave the losing connect to arrive during the test
+        wrapper.generateRdsIamAuthToken(
+                IamAuthTestSupport.HOST, 5432, IamAuthTestSupport.propertyMap());
+        wrapper.generateRdsIamAuthToken(HOST_2, 5433, IamAuthTestSupport.propertyMap());
+        Set<StubDriver.Connect> opened = ConcurrentHashMap.newKeySet();
+        delegate.onConnect(
+                connect -> {
+                    opened.add(connect);
+                    await(release);
+                });
+        Properties properties = raceProperties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "0.2");
+
+        long start = System.nanoTime();
+        SQLTimeoutException failure =
+                assertThrows(SQLTimeoutException.class, () -> wrapper.connect(URL, properties));
+
+        assertEquals("08001", failure.getSQLState());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        release.countDown();
+        waitUntil(
+                () ->
+                        opened.size() == 2
+                                && opened.stream().allMatch(StubDriver.Connect::isClosed));
+    }
+
+    private static Properties raceProperties() {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.IAM_AUTH_MULTI_HOST_MODE_PROPERTY, "race");
+        return properties;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met", System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+}
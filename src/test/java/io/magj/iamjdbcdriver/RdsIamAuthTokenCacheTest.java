@@ -0,0 +1,165 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class RdsIamAuthTokenCacheTest {
+
+    private static final CredentialProviderKey CREDENTIALS =
+            CredentialProviderKey.from(Collections.emptyMap());
+
+    private final IamAuthMetrics metrics =
+            new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>());
+    private final RdsIamAuthTokenCache cache =
+            new RdsIamAuthTokenCache(new SingleFlight<>(), metrics);
+
+    @Test
+    public void reusesTokenWithinReuseWindow() {
+        AtomicInteger generations = new AtomicInteger();
+        RdsIamAuthTokenKey key = key("db1");
+
+        String first =
+                cache.getOrGenerate(key, 60_000, () -> "token" + generations.incrementAndGet());
+        String second =
+                cache.getOrGenerate(key, 60_000, () -> "token" + generations.incrementAndGet());
+
+        assertEquals("token1", first);
+        assertEquals("token1", second);
+        assertEquals(1, metrics.getTokenCacheMisses());
+        assertEquals(1, metrics.getTokenCacheHits());
+    }
+
+    @Test
+    public void regeneratesTokenAfterReuseWindow() {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, issuedMillisAgo("old", 5_000));
+
+        assertNull(cache.get(key, 5_000));
+        assertEquals("new", cache.getOrGenerate(key, 5_000, () -> "new"));
+        assertEquals("new", cache.get(key, 5_000));
+    }
+
+    @Test
+    public void capsReuseWindowBelowTokenLifetime() {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, issuedMillisAgo("token", RdsIamAuthTokenCache.MAX_REUSE_MILLIS));
+
+        assertNull(cache.get(key, RdsIamAuthTokenCache.TOKEN_LIFETIME_MILLIS));
+    }
+
+    @Test
+    public void ignoresTokensIssuedInTheFuture() {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, issuedMillisAgo("token", -60_000));
+
+        assertNull(cache.get(key, 60_000));
+    }
+
+    @Test
+    public void keepsNewerTokenOverOlderPut() {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, issuedMillisAgo("newer", 1_000));
+        cache.put(key, issuedMillisAgo("older", 2_000));
+
+        assertEquals("newer", cache.get(key, 60_000));
+    }
+
+    @Test
+    public void evictsOldestTokensOverMaxSize() {
+        cache.setMaxSize(2);
+        cache.put(key("db1"), issuedMillisAgo("token1", 3_000));
+        cache.put(key("db2"), issuedMillisAgo("token2", 1_000));
+        cache.put(key("db3"), issuedMillisAgo("token3", 2_000));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getEntry(key("db1")));
+        assertNotNull(cache.getEntry(key("db2")));
+        assertNotNull(cache.getEntry(key("db3")));
+
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+        assertNotNull(cache.getEntry(key("db2")));
+    }
+
+    @Test
+    public void settlesAtMaxSizeAfterConcurrentPuts() throws Exception {
+        cache.setMaxSize(10);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> puts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String host = "db" + i;
+                puts.add(
+                        executor.submit(
+                                () -> cache.put(key(host), issuedMillisAgo(host, 1_000))));
+            }
+            for (Future<?> put : puts) {
+                put.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        cache.put(key("newest"), issuedMillisAgo("newest", 0));
+
+        // Concurrent evictions may each remove an entry, leaving fewer than the maximum
+        assertTrue(cache.size() <= 10);
+        assertEquals("newest", cache.get(key("newest"), 60_000));
+    }
+
+    @Test
+    public void rejectsMaxSizeBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> cache.setMaxSize(0));
+        assertEquals(RdsIamAuthTokenCache.DEFAULT_MAX_SIZE, cache.getMaxSize());
+    }
+
+    @Test
+    public void invalidatesOnlyTheGivenToken() {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, issuedMillisAgo("replacement", 0));
+
+        cache.invalidate(key, "rejected");
+        assertEquals("replacement", cache.get(key, 60_000));
+
+        cache.invalidate(key, "replacement");
+        assertNull(cache.get(key, 60_000));
+    }
+
+    @Test
+    public void doesNotCacheFailedGenerations() {
+        RdsIamAuthTokenKey key = key("db1");
+
+        assertThrows(
+                IllegalStateException.class,
+                () ->
+                        cache.getOrGenerate(
+                                key,
+                                60_000,
+                                () -> {
+                                    throw new IllegalStateException("Unable to load credentials");
+                                }));
+
+        assertEquals(0, cache.size());
+        assertEquals("token", cache.getOrGenerate(key, 60_000, () -> "token"));
+    }
+
+    private static RdsIamAuthTokenKey key(String host) {
+        return new RdsIamAuthTokenKey(host, 5432, "iam_user", "us-east-1", CREDENTIALS);
+    }
+
+    private static RdsIamAuthTokenCache.CachedToken issuedMillisAgo(String token, long millis) {
+        return new RdsIamAuthTokenCache.CachedToken(token, System.currentTimeMillis() - millis);
+    }
+}
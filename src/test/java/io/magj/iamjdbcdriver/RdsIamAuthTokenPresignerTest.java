@@ -0,0 +1,158 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.auth.AWS4Signer;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.auth.SdkClock;
+import com.amazonaws.auth.StaticSignerProvider;
+import com.amazonaws.auth.presign.PresignerParams;
+import com.amazonaws.services.rds.auth.GetIamAuthTokenRequest;
+import com.amazonaws.services.rds.auth.RdsIamAuthTokenGenerator;
+import java.lang.reflect.Constructor;
+import java.time.Instant;
+import java.util.Date;
+import org.junit.Test;
+
+/** Checks that the built in presigner produces exactly the token the SDK would. */
+public class RdsIamAuthTokenPresignerTest {
+
+    private static final String HOST = "db1.abcdefghijkl.us-east-1.rds.amazonaws.com";
+    private static final String REGION = "us-east-1";
+    private static final long SIGNING_TIME_MILLIS =
+            Instant.parse("2020-06-15T12:34:56.789Z").toEpochMilli();
+    private static final AWSCredentials CREDENTIALS =
+            new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY");
+
+    private final RdsIamAuthTokenPresigner presigner = new RdsIamAuthTokenPresigner();
+
+    @Test
+    public void matchesSdkToken() {
+        assertMatchesSdk(HOST, 5432, "iam_user", CREDENTIALS, SIGNING_TIME_MILLIS);
+    }
+
+    @Test
+    public void matchesSdkTokenWithSessionCredentials() {
+        AWSCredentials credentials =
+                new BasicSessionCredentials(
+                        "ASIAEXAMPLE",
+                        "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+                        "FwoGZXIvYXdzEBYaDH+session/token==");
+
+        assertMatchesSdk(HOST, 5432, "iam_user", credentials, SIGNING_TIME_MILLIS);
+    }
+
+    @Test
+    public void matchesSdkTokenForUsersNeedingEncoding() {
+        assertMatchesSdk(HOST, 3306, "user name+/=&?%~._-", CREDENTIALS, SIGNING_TIME_MILLIS);
+        assertMatchesSdk(
+                HOST, 3306, "\u00fcs\u00e9r_\u540d\u524d", CREDENTIALS, SIGNING_TIME_MILLIS);
+    }
+
+    @Test
+    public void matchesSdkTokenForOtherHosts() {
+        assertMatchesSdk("[2001:db8::1]", 5432, "iam_user", CREDENTIALS, SIGNING_TIME_MILLIS);
+        assertMatchesSdk("localhost", 80, "iam_user", CREDENTIALS, SIGNING_TIME_MILLIS);
+        assertMatchesSdk("localhost", 443, "iam_user", CREDENTIALS, SIGNING_TIME_MILLIS);
+        assertMatchesSdk(
+                "db1.abcdefghijkl.cn-north-1.rds.amazonaws.com.cn",
+                5432,
+                "iam_user",
+                CREDENTIALS,
+                SIGNING_TIME_MILLIS);
+    }
+
+    @Test
+    public void matchesSdkTokenAcrossDateBoundaries() {
+        for (String time :
+                new String[] {
+                    "2020-06-15T23:59:59.999Z",
+                    "2020-06-16T00:00:00Z",
+                    "2020-02-29T23:45:00Z",
+                    "2020-12-31T23:59:59Z",
+                    "2021-01-01T00:00:00Z",
+                    "2000-01-01T00:00:00Z",
+                    "2100-03-01T00:00:00Z"
+                }) {
+            assertMatchesSdk(
+                    HOST, 5432, "iam_user", CREDENTIALS, Instant.parse(time).toEpochMilli());
+        }
+    }
+
+    @Test
+    public void derivesNewSigningKeyForEachDay() {
+        long beforeMidnight = Instant.parse("2020-06-15T23:59:59Z").toEpochMilli();
+        long afterMidnight = Instant.parse("2020-06-16T00:00:01Z").toEpochMilli();
+
+        // Signed in order, so a signing key cached for the first day would be reused for the next
+        assertMatchesSdk(HOST, 5432, "iam_user", CREDENTIALS, beforeMidnight);
+        assertMatchesSdk(HOST, 5432, "iam_user", CREDENTIALS, afterMidnight);
+        assertMatchesSdk(HOST, 5432, "iam_user", CREDENTIALS, beforeMidnight);
+    }
+
+    @Test
+    public void extractsAccessKeyIdFromToken() {
+        String token =
+                presigner.presign(
+                        HOST,
+                        5432,
+                        "iam_user",
+                        REGION,
+                        CREDENTIALS,
+                        SIGNING_TIME_MILLIS,
+                        RdsIamAuthTokenPresigner.EXPIRES_SECONDS);
+
+        assertEquals("AKIDEXAMPLE", RdsIamAuthTokenPresigner.accessKeyId(token));
+        assertNull(RdsIamAuthTokenPresigner.accessKeyId("password"));
+    }
+
+    private void assertMatchesSdk(
+            String host, int port, String user, AWSCredentials credentials, long timeMillis) {
+        assertEquals(
+                sdkToken(host, port, user, credentials, timeMillis),
+                presigner.presign(
+                        host,
+                        port,
+                        user,
+                        REGION,
+                        credentials,
+                        timeMillis,
+                        RdsIamAuthTokenPresigner.EXPIRES_SECONDS));
+    }
+
+    private static String sdkToken(
+            String host, int port, String user, AWSCredentials credentials, long timeMillis) {
+        // The builder takes no clock, so the generator is built as its builder would build it,
+        // other than signing, and expiring tokens, at the given time rather than now
+        SdkClock clock = new SdkClock.MockClock(timeMillis);
+        AWS4Signer signer = new AWS4Signer(clock);
+        signer.setOverrideDate(new Date(timeMillis));
+        signer.setRegionName(REGION);
+        signer.setServiceName(RdsIamAuthTokenPresigner.SERVICE_NAME);
+        PresignerParams params =
+                PresignerParams.builder()
+                        .credentialsProvider(new AWSStaticCredentialsProvider(credentials))
+                        .signerProvider(new StaticSignerProvider(signer))
+                        .clock(clock)
+                        .build();
+        try {
+            Constructor<RdsIamAuthTokenGenerator> constructor =
+                    RdsIamAuthTokenGenerator.class.getDeclaredConstructor(PresignerParams.class);
+            constructor.setAccessible(true);
+            return constructor
+                    .newInstance(params)
+                    .getAuthToken(
+                            GetIamAuthTokenRequest.builder()
+                                    .hostname(host)
+                                    .port(port)
+                                    .userName(user)
+                                    .build());
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError("Unable to create SDK token generator", e);
+        }
+    }
+}
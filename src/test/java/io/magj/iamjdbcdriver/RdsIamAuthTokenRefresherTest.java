@@ -0,0 +1,217 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.After;
+import org.junit.Test;
+
+public class RdsIamAuthTokenRefresherTest {
+
+    private static final CredentialProviderKey CREDENTIALS =
+            CredentialProviderKey.from(Collections.emptyMap());
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    private final RdsIamAuthTokenCache cache =
+            new RdsIamAuthTokenCache(
+                    new SingleFlight<>(),
+                    new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>()));
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final RdsIamAuthTokenRefresher refresher =
+            new RdsIamAuthTokenRefresher(cache, executor, NEVER);
+
+    @After
+    public void shutdown() {
+        refresher.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void capsRefreshLeadToAFractionOfTheReuseWindow() {
+        assertEquals(
+                RdsIamAuthTokenRefresher.REFRESH_AHEAD_MILLIS,
+                RdsIamAuthTokenRefresher.refreshAheadMillis(600_000));
+        assertEquals(5_000, RdsIamAuthTokenRefresher.refreshAheadMillis(20_000));
+    }
+
+    @Test
+    public void leavesFreshTokensWithShortReuseWindows() {
+        AtomicInteger generations = new AtomicInteger();
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, new RdsIamAuthTokenCache.CachedToken("token", now()));
+        refresher.register(key, 20_000, NEVER, counting(generations));
+
+        refresher.refresh();
+
+        assertEquals(0, generations.get());
+    }
+
+    @Test
+    public void refreshesTokensNearingTheEndOfTheirReuseWindow() throws Exception {
+        RdsIamAuthTokenKey key = key("db1");
+        cache.put(key, new RdsIamAuthTokenCache.CachedToken("old", now() - 16_000));
+        CountDownLatch refreshed = new CountDownLatch(1);
+        refresher.register(
+                key,
+                20_000,
+                NEVER,
+                () -> {
+                    refreshed.countDown();
+                    return "new";
+                });
+
+        refresher.refresh();
+
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        awaitToken(key, "new");
+    }
+
+    @Test
+    public void hungRefreshDoesNotHoldUpOtherEndpoints() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch hung = new CountDownLatch(1);
+        AtomicInteger hungGenerations = new AtomicInteger();
+        refresher.register(
+                key("hung"),
+                20_000,
+                NEVER,
+                () -> {
+                    hungGenerations.incrementAndGet();
+                    hung.countDown();
+                    await(release);
+                    return "late";
+                });
+        refresher.register(key("db1"), 20_000, NEVER, () -> "token");
+
+        refresher.refresh();
+        awaitToken(key("db1"), "token");
+        assertTrue(hung.await(5, TimeUnit.SECONDS));
+
+        // The hung refresh is not started again while it is still running
+        refresher.refresh();
+        assertEquals(1, hungGenerations.get());
+
+        release.countDown();
+        awaitToken(key("hung"), "late");
+    }
+
+    @Test
+    public void logsRefreshesSkippedByOpenCircuitAtFine() throws Exception {
+        TokenGenerationCircuitBreaker breaker =
+                new TokenGenerationCircuitBreaker(
+                        new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>()));
+        refresher.register(
+                key("db1"),
+                20_000,
+                NEVER,
+                () ->
+                        breaker.execute(
+                                CREDENTIALS,
+                                60_000,
+                                60_000,
+                                () -> {
+                                    throw new IllegalStateException("STS unavailable");
+                                }));
+        Logger logger = Logger.getLogger(RdsIamAuthTokenRefresher.class.getName());
+        List<LogRecord> records = new CopyOnWriteArrayList<>();
+        Handler handler =
+                new Handler() {
+                    @Override
+                    public void publish(LogRecord record) {
+                        records.add(record);
+                    }
+
+                    @Override
+                    public void flush() {}
+
+                    @Override
+                    public void close() {}
+                };
+        Level level = logger.getLevel();
+        logger.setLevel(Level.FINE);
+        logger.addHandler(handler);
+        try {
+            // Refreshes are only started once the previous one has finished
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (records.size() < 3) {
+                assertTrue("Timed out waiting for refreshes", System.nanoTime() - deadline < 0);
+                refresher.refresh();
+                Thread.sleep(1);
+            }
+        } finally {
+            logger.removeHandler(handler);
+            logger.setLevel(level);
+        }
+
+        assertEquals(Level.WARNING, records.get(0).getLevel());
+        assertTrue(records.get(0).getThrown() instanceof IllegalStateException);
+        for (LogRecord record : records.subList(1, records.size())) {
+            assertEquals(Level.FINE, record.getLevel());
+            assertNull(record.getThrown());
+        }
+    }
+
+    @Test
+    public void shutdownLeavesOtherRefreshersCheckingOnSharedScheduler() throws Exception {
+        RdsIamAuthTokenRefresher other = new RdsIamAuthTokenRefresher(cache, executor, 10);
+        other.register(key("db1"), 20_000, NEVER, () -> "token");
+
+        refresher.shutdown();
+
+        // Refreshed by the other refresher's own periodic check
+        awaitToken(key("db1"), "token");
+        other.shutdown();
+    }
+
+    @Test
+    public void forgetsIdleEndpoints() throws InterruptedException {
+        refresher.register(key("db1"), 20_000, 0, () -> "token");
+        Thread.sleep(5);
+
+        refresher.refresh();
+
+        assertEquals(0, refresher.size());
+    }
+
+    private void awaitToken(RdsIamAuthTokenKey key, String token) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!token.equals(cache.get(key, 20_000))) {
+            assertTrue("Timed out waiting for " + token, System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    private static Supplier<String> counting(AtomicInteger generations) {
+        return () -> "token" + generations.incrementAndGet();
+    }
+
+    private static RdsIamAuthTokenKey key(String host) {
+        return new RdsIamAuthTokenKey(host, 5432, "iam_user", "us-east-1", CREDENTIALS);
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
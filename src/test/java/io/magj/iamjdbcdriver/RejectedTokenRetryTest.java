@@ -0,0 +1,191 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RejectedTokenRetryTest {
+
+    private static final AtomicInteger HOSTS = new AtomicInteger();
+
+    /** A host of its own, so that no other test shares its cached token. */
+    private final String host =
+            "retry" + HOSTS.incrementAndGet() + ".abcdefghijkl.us-east-1.rds.amazonaws.com";
+
+    private final String url = IamAuthTestSupport.url(host + ":5432");
+    private final StubDriver delegate = IamAuthTestSupport.registerStubDriver();
+    private final AtomicLong nanoTime = new AtomicLong();
+    /** A wrapper that measures login timeouts by {@link #nanoTime}, which only tests advance. */
+    private final IamAuthJdbcDriverWrapper wrapper =
+            new IamAuthJdbcDriverWrapper(
+                    IamAuthTestSupport.WRAPPER_SCHEME_NAME,
+                    IamAuthTestSupport.DELEGATE_SCHEME_NAME,
+                    IamAuthTestSupport.PORT,
+                    StubDriver.class.getName(),
+                    false) {
+                @Override
+                long nanoTime() {
+                    return nanoTime.get();
+                }
+            };
+    private final AtomicInteger signings = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+    private final IamAuthMetricsListener listener =
+            new IamAuthMetricsListener() {
+                @Override
+                public void tokenSigned(long durationNanos) {
+                    signings.incrementAndGet();
+                }
+
+                @Override
+                public void rejectedTokenRetried() {
+                    retries.incrementAndGet();
+                }
+            };
+
+    @Before
+    public void addListener() {
+        IamAuthJdbcDriverWrapper.addMetricsListener(listener);
+    }
+
+    @After
+    public void removeListener() {
+        IamAuthJdbcDriverWrapper.removeMetricsListener(listener);
+    }
+
+    @Test
+    public void retriesOnceWithNewTokenWhenPostgreSqlRejectsPassword() throws Exception {
+        assertRetriesWithNewToken(new SQLException("password authentication failed", "28P01"));
+    }
+
+    @Test
+    public void retriesOnceWithNewTokenWhenAuthorizationIsInvalid() throws Exception {
+        assertRetriesWithNewToken(new SQLException("PAM authentication failed", "28000"));
+    }
+
+    @Test
+    public void retriesOnceWithNewTokenWhenMySqlDeniesAccess() throws Exception {
+        assertRetriesWithNewToken(new SQLException("Access denied for user", "HY000", 1045));
+    }
+
+    @Test
+    public void retriesOnlyOnce() {
+        SQLException first = new SQLException("password authentication failed", "28P01");
+        SQLException second = new SQLException("password authentication failed", "28P01");
+        AtomicInteger connects = new AtomicInteger();
+        delegate.onConnect(
+                connect -> {
+                    throw connects.incrementAndGet() == 1 ? first : second;
+                });
+
+        SQLException failure =
+                assertThrows(SQLException.class, () -> wrapper.connect(url, retryProperties()));
+
+        assertSame(second, failure);
+        assertArrayEquals(new Throwable[] {first}, failure.getSuppressed());
+        assertEquals(2, delegate.getConnectCount());
+        assertEquals(1, retries.get());
+    }
+
+    @Test
+    public void doesNotRetryOtherFailures() {
+        SQLException refused = new SQLException("Connection refused", "08001");
+        delegate.onConnect(
+                connect -> {
+                    throw refused;
+                });
+
+        assertSame(
+                refused,
+                assertThrows(SQLException.class, () -> wrapper.connect(url, retryProperties())));
+        assertEquals(1, delegate.getConnectCount());
+    }
+
+    @Test
+    public void doesNotRetryUnlessEnabled() {
+        SQLException rejected = new SQLException("password authentication failed", "28P01");
+        delegate.onConnect(
+                connect -> {
+                    throw rejected;
+                });
+        Properties properties = retryProperties();
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_RETRY_REJECTED_TOKEN_PROPERTY, "false");
+
+        assertSame(
+                rejected,
+                assertThrows(SQLException.class, () -> wrapper.connect(url, properties)));
+        assertEquals(1, delegate.getConnectCount());
+        assertEquals(0, retries.get());
+    }
+
+    @Test
+    public void doesNotRetryOnceLoginTimeoutElapsed() {
+        SQLException rejected = new SQLException("password authentication failed", "28P01");
+        delegate.onConnect(
+                connect -> {
+                    nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10));
+                    throw rejected;
+                });
+        Properties properties = retryProperties();
+        properties.setProperty(IamAuthJdbcDriverWrapper.LOGIN_TIMEOUT_PROPERTY, "5");
+
+        assertSame(
+                rejected,
+                assertThrows(SQLException.class, () -> wrapper.connect(url, properties)));
+        assertEquals(1, delegate.getConnectCount());
+        assertEquals(0, retries.get());
+    }
+
+    /**
+     * Rejects the first connect, checking that the cached token is replaced by a newly signed one
+     * for the one retry.
+     */
+    private void assertRetriesWithNewToken(SQLException rejection) throws Exception {
+        AtomicInteger connects = new AtomicInteger();
+        delegate.onConnect(
+                connect -> {
+                    if (connects.incrementAndGet() == 1) {
+                        throw rejection;
+                    }
+                });
+
+        Connection connection = wrapper.connect(url, retryProperties());
+
+        assertTrue(
+                IamAuthTestSupport.isToken(StubDriver.recorded(connection).password, host, 5432));
+        assertEquals(2, delegate.getConnectCount());
+        assertEquals(1, retries.get());
+        // Signed for the first connect, and again as the rejected token was not reused. Signing
+        // with the same static credentials within the same second gives the same token again, as
+        // tokens are signed to the second, so the signings are counted rather than the tokens
+        // compared
+        assertEquals(2, signings.get());
+
+        // The replacement is cached
+        wrapper.connect(url, retryProperties());
+        assertEquals(2, signings.get());
+    }
+
+    /** Properties that cache tokens, and retry connects once when the token is rejected. */
+    private static Properties retryProperties() {
+        Properties properties = IamAuthTestSupport.properties();
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_TOKEN_CACHE_ENABLED_PROPERTY, "true");
+        properties.setProperty(
+                IamAuthJdbcDriverWrapper.IAM_AUTH_RETRY_REJECTED_TOKEN_PROPERTY, "true");
+        return properties;
+    }
+}
@@ -0,0 +1,126 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sharesOneComputationBetweenConcurrentCallers() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(
+                    executor.submit(
+                            () ->
+                                    flights.execute(
+                                            "key",
+                                            () -> {
+                                                computations.incrementAndGet();
+                                                await(release);
+                                                return "value";
+                                            })));
+        }
+        awaitCallers(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, computations.get());
+        assertEquals(1, flights.getExecutedCount());
+        assertEquals(CALLERS - 1, flights.getCoalescedCount());
+    }
+
+    @Test
+    public void sharesFailureWithWaitingCallers() throws Exception {
+        IllegalStateException failure = new IllegalStateException("Unable to load credentials");
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first =
+                executor.submit(
+                        () ->
+                                flights.execute(
+                                        "key",
+                                        () -> {
+                                            await(release);
+                                            throw failure;
+                                        }));
+        awaitExecuted(1);
+        Future<String> waiter = executor.submit(() -> flights.execute("key", () -> "unused"));
+        awaitCallers(1);
+        release.countDown();
+
+        assertSame(failure, causeOf(first));
+        assertSame(failure, causeOf(waiter));
+    }
+
+    @Test
+    public void computesAgainOnceComplete() {
+        assertEquals("first", flights.execute("key", () -> "first"));
+        assertEquals("second", flights.execute("key", () -> "second"));
+        assertEquals(2, flights.getExecutedCount());
+        assertEquals(0, flights.getCoalescedCount());
+    }
+
+    @Test
+    public void doesNotCoalesceDifferentKeys() {
+        assertEquals("a", flights.execute("a", () -> flights.execute("b", () -> "a")));
+        assertEquals(2, flights.getExecutedCount());
+    }
+
+    private void awaitCallers(int coalesced) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.getCoalescedCount() < coalesced) {
+            assertTrue(System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitExecuted(int executed) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.getExecutedCount() < executed) {
+            assertTrue(System.nanoTime() - deadline < 0);
+            Thread.sleep(1);
+        }
+    }
+
+    private static Throwable causeOf(Future<?> future) {
+        return assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS))
+                .getCause();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.magj.iamjdbcdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Test;
+
+public class TokenGenerationCircuitBreakerTest {
+
+    private static final CredentialProviderKey KEY =
+            CredentialProviderKey.from(
+                    Collections.singletonMap(
+                            IamAuthJdbcDriverWrapper.AWS_PROFILE_PROPERTY, "test-profile"));
+
+    private final IamAuthMetrics metrics =
+            new IamAuthMetrics(new SingleFlight<>(), new SingleFlight<>());
+    private final TokenGenerationCircuitBreaker breaker =
+            new TokenGenerationCircuitBreaker(metrics);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void alwaysRunsGenerationWithoutBackoff() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> execute(0, this::fail));
+        }
+        assertEquals("token", execute(0, () -> "token"));
+        assertEquals(0, metrics.getTokenGenerationsRejected());
+    }
+
+    @Test
+    public void rejectsGenerationsWhileBackingOff() {
+        IllegalStateException failure =
+                assertThrows(IllegalStateException.class, () -> execute(60_000, this::fail));
+
+        AtomicInteger generations = new AtomicInteger();
+        TokenGenerationCircuitBreaker.OpenException rejected =
+                assertThrows(
+                        TokenGenerationCircuitBreaker.OpenException.class,
+                        () -> execute(60_000, () -> "token" + generations.incrementAndGet()));
+
+        assertSame(failure, rejected.getCause());
+        assertEquals(0, generations.get());
+        assertEquals(1, metrics.getTokenGenerationFailures());
+        assertEquals(1, metrics.getTokenGenerationsRejected());
+    }
+
+    @Test
+    public void closesAfterSuccessfulRetry() throws InterruptedException {
+        assertThrows(IllegalStateException.class, () -> execute(20, this::fail));
+        Thread.sleep(40);
+
+        assertEquals("token", execute(20, () -> "token"));
+        assertEquals("token", execute(20, () -> "token"));
+    }
+
+    @Test
+    public void doublesBackoffOnConsecutiveFailures() throws InterruptedException {
+        assertThrows(IllegalStateException.class, () -> execute(20, this::fail));
+        assertTrue(rejectionMessage(20).contains("failed 1 consecutive times"));
+        Thread.sleep(40);
+
+        assertThrows(IllegalStateException.class, () -> execute(20, this::fail));
+        assertTrue(rejectionMessage(20).contains("failed 2 consecutive times"));
+        Thread.sleep(20);
+        // Still within the doubled backoff
+        rejectionMessage(20);
+    }
+
+    @Test
+    public void letsOneCallerRetryAtATime() throws Exception {
+        assertThrows(IllegalStateException.class, () -> execute(20, this::fail));
+        Thread.sleep(40);
+
+        CountDownLatch retrying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> retry =
+                executor.submit(
+                        () ->
+                                execute(
+                                        20,
+                                        () -> {
+                                            retrying.countDown();
+                                            await(release);
+                                            return "token";
+                                        }));
+        assertTrue(retrying.await(5, TimeUnit.SECONDS));
+
+        rejectionMessage(20);
+        release.countDown();
+        assertEquals("token", retry.get(5, TimeUnit.SECONDS));
+        assertEquals("token", execute(20, () -> "token"));
+    }
+
+    @Test
+    public void countsFailuresOfConcurrentGenerationsOnce() throws Exception {
+        int callers = 8;
+        CountDownLatch started = new CountDownLatch(callers);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?>[] calls = new Future<?>[callers];
+        for (int i = 0; i < callers; i++) {
+            calls[i] =
+                    executor.submit(
+                            () ->
+                                    execute(
+                                            60_000,
+                                            () -> {
+                                                started.countDown();
+                                                await(release);
+                                                return fail();
+                                            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Future<?> call : calls) {
+            try {
+                call.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+
+        assertEquals(callers, metrics.getTokenGenerationFailures());
+        assertTrue(rejectionMessage(60_000).contains("failed 1 consecutive times"));
+    }
+
+    private String execute(long initialBackoffMillis, Supplier<String> gen) {
+        return breaker.execute(KEY, initialBackoffMillis, initialBackoffMillis * 8, gen);
+    }
+
+    private String rejectionMessage(long initialBackoffMillis) {
+        return assertThrows(
+                        TokenGenerationCircuitBreaker.OpenException.class,
+                        () -> execute(initialBackoffMillis, () -> "token"))
+                .getMessage();
+    }
+
+    private String fail() {
+        throw new IllegalStateException("Unable to load credentials");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
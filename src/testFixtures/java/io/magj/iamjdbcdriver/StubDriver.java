@@ -0,0 +1,172 @@
+package io.magj.iamjdbcdriver;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A delegate driver that accepts URLs with the given schemes, {@code jdbc:postgresql:} and {@code
+ * jdbc:mysql:} by default, without opening any network connections, recording what each connect
+ * received.
+ *
+ * <p>Every connect returns a new inert {@link Connection}, from which {@link #recorded(Connection)}
+ * returns the URL and properties that the connect received, so that concurrent callers can check
+ * they were given the token for their own connect rather than another thread's. Connects can be
+ * made to fail, or to take a while, with {@link #onConnect(ConnectHandler)}.
+ *
+ * <p>Wrappers resolve delegates by class name, so tests use an instance of their own by
+ * registering it with {@link IamAuthJdbcDriverWrapper#registerDelegateDriver(String, Driver)},
+ * which replaces any instance of the same class resolved before.
+ */
+public class StubDriver implements Driver {
+
+    private final String[] urlPrefixes;
+    private final AtomicInteger connectCount = new AtomicInteger();
+    private volatile Connect lastConnect;
+    private volatile ConnectHandler connectHandler;
+
+    public StubDriver() {
+        this("postgresql", "mysql");
+    }
+
+    public StubDriver(String... schemeNames) {
+        urlPrefixes = new String[schemeNames.length];
+        for (int i = 0; i < schemeNames.length; i++) {
+            urlPrefixes[i] = IamAuthJdbcDriverWrapper.JDBC_URL_PREFIX + schemeNames[i] + ":";
+        }
+    }
+
+    /** Called with every connect before it returns, to throw or delay the connect. */
+    public interface ConnectHandler {
+        void connect(Connect connect) throws SQLException;
+    }
+
+    /** Sets the handler for later connects, or clears it if null. */
+    public StubDriver onConnect(ConnectHandler connectHandler) {
+        this.connectHandler = connectHandler;
+        return this;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Connect connect = new Connect(url, info);
+        lastConnect = connect;
+        connectCount.incrementAndGet();
+        ConnectHandler handler = connectHandler;
+        if (handler != null) {
+            handler.connect(connect);
+        }
+        return (Connection)
+                Proxy.newProxyInstance(
+                        StubDriver.class.getClassLoader(),
+                        new Class<?>[] {Connection.class},
+                        connect);
+    }
+
+    /** What the delegate received for the connect that returned the connection. */
+    public static Connect recorded(Connection connection) {
+        return (Connect) Proxy.getInvocationHandler(connection);
+    }
+
+    /** The most recent connect, including connects that the handler failed, or null if none. */
+    public Connect getLastConnect() {
+        return lastConnect;
+    }
+
+    /** The number of connects to accepted URLs, including connects that the handler failed. */
+    public int getConnectCount() {
+        return connectCount.get();
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        for (String urlPrefix : urlPrefixes) {
+            if (url.startsWith(urlPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /** A connect the delegate received, and the state of the connection it returned. */
+    public static final class Connect implements InvocationHandler {
+        public final String url;
+        public final Properties properties;
+        public final String user;
+        public final String password;
+        private volatile boolean closed;
+
+        private Connect(String url, Properties properties) {
+            this.url = url;
+            this.properties = properties;
+            this.user = properties.getProperty(IamAuthJdbcDriverWrapper.DEFAULT_USER_PROPERTY);
+            this.password =
+                    properties.getProperty(IamAuthJdbcDriverWrapper.DEFAULT_PASSWORD_PROPERTY);
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StubConnection[" + url + "]";
+                default:
+                    break;
+            }
+            if (method.getReturnType() == boolean.class) {
+                return false;
+            } else if (method.getReturnType() == int.class) {
+                return 0;
+            }
+            return null;
+        }
+    }
+}